@@ -0,0 +1,38 @@
+package benchmarks;
+
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+// The engine's classes are in the default package, which code in a package can't name, and JMH only
+// generates benchmarks for classes in a package. So the benchmarks get their operations from Benchmarks
+// by reflection, once while setting up; what they time are plain IntSupplier calls.
+final class Engine {
+    private Engine() {
+    }
+
+    // Benchmarks.operation(name)
+    static IntSupplier operation(String name) {
+        return (IntSupplier) call("Benchmarks", "operation", new Class<?>[]{String.class}, name);
+    }
+
+    // Benchmarks.makeMoves()
+    @SuppressWarnings("unchecked")
+    static Supplier<IntSupplier> makeMoves() {
+        return (Supplier<IntSupplier>) call("Benchmarks", "makeMoves", new Class<?>[0]);
+    }
+
+    // Metrics.setEnabled(enabled)
+    static void setMetricsEnabled(boolean enabled) {
+        call("Metrics", "setEnabled", new Class<?>[]{boolean.class}, enabled);
+    }
+
+    private static Object call(String className, String method, Class<?>[] types, Object... args) {
+        try {
+            java.lang.reflect.Method target = Class.forName(className).getDeclaredMethod(method, types);
+            target.setAccessible(true); // The classes themselves are package-private
+            return target.invoke(null, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't call " + className + "." + method, e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A complete ChessGameFacade.makeMove, with Metrics off and on. makeMove changes the game, so every move
+// is played on a fresh game: a batch of games is set up before each invocation, outside the measurement,
+// and the invocation plays one move in each (timing every move on its own would cost more than the move).
+// The gc profiler counts the allocation of setting the games up as well; Benchmarks shows makeMove's own.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class MakeMoveBenchmark {
+    private static final int GAMES = 1000;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private Supplier<IntSupplier> games;
+    private final IntSupplier[] moves = new IntSupplier[GAMES];
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        Engine.setMetricsEnabled(metrics);
+        games = Engine.makeMoves();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpGames() {
+        for (int i = 0; i < GAMES; i++) {
+            moves[i] = games.get();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Engine.setMetricsEnabled(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public int makeMove() {
+        int played = 0;
+        for (IntSupplier move : moves) {
+            played += move.getAsInt();
+        }
+        return played;
+    }
+}
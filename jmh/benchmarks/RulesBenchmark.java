@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Move validation, check detection and terminal-state tests on the middlegame and endgame positions of
+// Benchmarks.POSITIONS; the names are Benchmarks.OPERATIONS. Every name runs in a fork of its own, so
+// the JIT only ever sees one operation.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class RulesBenchmark {
+    @Param({"canMove.pawn", "canMove.knight", "canMove.bishop", "canMove.rook", "canMove.queen", "canMove.king",
+            "isKingInCheck", "isKingInCheck.afterChange", "isCheckmate", "isStalemate", "Fen.load", "Fen.write"})
+    public String operation;
+
+    private IntSupplier run;
+
+    @Setup
+    public void setUp() {
+        run = Engine.operation(operation);
+    }
+
+    @Benchmark
+    public int rules() {
+        return run.getAsInt();
+    }
+}
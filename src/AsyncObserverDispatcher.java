@@ -0,0 +1,307 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Tells observers about moves on background threads, so a slow observer (like GameLogger printing
+// the board) doesn't add to the time a move takes. Register the dispatcher on boards like any
+// observer and register the real observers on the dispatcher:
+//
+//   AsyncObserverDispatcher dispatcher = new AsyncObserverDispatcher(1024, 1, Backpressure.BLOCK);
+//   dispatcher.addObserver(new GameLogger());
+//   board.addObserver(dispatcher);
+//
+// A move only copies a snapshot of the board into a preallocated slot of a bounded ring buffer.
+// Each consumer thread has its own ring and takes events from it in batches of up to batchSize.
+// Every board always goes to the same consumer, so the events of one game arrive in order.
+// What happens when a ring is full is decided by the backpressure policy.
+class AsyncObserverDispatcher implements GameObserver, AutoCloseable {
+    // Only BLOCK delivers every move, so observers that need all of them, like a MoveJournal's, need BLOCK.
+    // They must also take the move from the event (MoveEvent.getMove) by overriding moveMade/movesMade:
+    // the board the default moveMade rebuilds has no moves, so its getLastMove() is 0.
+    enum Backpressure {
+        DROP, // Forget the new event
+        BLOCK, // Wait in the move until there is room
+        // Overwrite the newest waiting event of the same board with the new position, since observers
+        // mostly care about the latest state; wait like BLOCK if none of that board's events is waiting.
+        // Observers then never see the moves in between (MoveEvent.getCoalesced() says how many).
+        COALESCE
+    }
+
+    private final List<GameObserver> observers = new CopyOnWriteArrayList<>();
+    private final Ring[] rings;
+    private final Backpressure backpressure;
+    private volatile boolean closed;
+
+    // Metrics
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder observerErrors = new LongAdder();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final LongAdder totalLagNanos = new LongAdder();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    // How many events waited between 2^i and 2^(i+1) nanoseconds before their observers got them
+    private final AtomicLongArray lagHistogram = new AtomicLongArray(64);
+
+    // One consumer thread with its own bounded ring of events
+    private class Ring implements Runnable {
+        final MoveEvent[] slots;
+        final MoveEvent[] batch;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition notEmpty = lock.newCondition();
+        final Condition notFull = lock.newCondition();
+        final Thread thread;
+        int head; // Oldest waiting event
+        int count; // Number of waiting events
+
+        Ring(int capacity, int batchSize, int index) {
+            slots = new MoveEvent[capacity];
+            for (int i = 0; i < capacity; i++) slots[i] = new MoveEvent();
+            batch = new MoveEvent[batchSize];
+            for (int i = 0; i < batchSize; i++) batch[i] = new MoveEvent();
+            thread = new Thread(this, "observer-dispatch-" + index);
+            thread.setDaemon(true);
+        }
+
+        void publish(Board board, int move, long now) {
+            lock.lock();
+            try {
+                while (count == slots.length) {
+                    if (closed) {
+                        dropped.increment(); // Woke up after close()
+                        return;
+                    }
+                    if (backpressure == Backpressure.DROP) {
+                        dropped.increment();
+                        return;
+                    }
+                    if (backpressure == Backpressure.COALESCE) {
+                        MoveEvent pending = newestFor(board);
+                        if (pending != null) {
+                            // Keeps its place in the queue and its publish time, so the lag still counts from the oldest move
+                            int merged = pending.coalesced + 1;
+                            pending.capture(board, move, sequence.getAndIncrement(), pending.publishedNanos);
+                            pending.coalesced = merged;
+                            coalesced.increment();
+                            return;
+                        }
+                    }
+                    try {
+                        notFull.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.increment();
+                        return;
+                    }
+                }
+                if (closed) {
+                    dropped.increment();
+                    return;
+                }
+                slots[(head + count) % slots.length].capture(board, move, sequence.getAndIncrement(), now);
+                count++;
+                maxQueueDepth.accumulateAndGet(count, Math::max);
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private MoveEvent newestFor(Board board) {
+            for (int i = count - 1; i >= 0; i--) {
+                MoveEvent event = slots[(head + i) % slots.length];
+                if (event.source == board) return event;
+            }
+            return null;
+        }
+
+        // Takes waiting events in batches and hands them to the observers until the dispatcher is closed
+        @Override
+        public void run() {
+            while (true) {
+                int size;
+                lock.lock();
+                try {
+                    while (count == 0) {
+                        if (closed) return;
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    size = Math.min(count, batch.length);
+                    for (int i = 0; i < size; i++) {
+                        MoveEvent slot = slots[(head + i) % slots.length];
+                        batch[i].copyFrom(slot);
+                        slot.source = null; // Don't keep finished games' boards alive
+                    }
+                    head = (head + size) % slots.length;
+                    count -= size;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                long now = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    recordLag(now - batch[i].publishedNanos);
+                }
+                for (GameObserver observer : observers) {
+                    try {
+                        observer.movesMade(batch, size);
+                    } catch (RuntimeException e) {
+                        observerErrors.increment(); // One broken observer shouldn't stop the others
+                    }
+                }
+                if (Metrics.isEnabled()) Metrics.OBSERVER_BATCH.record(System.nanoTime() - now);
+                delivered.add(size);
+                batches.increment();
+            }
+        }
+
+        int depth() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public AsyncObserverDispatcher(int capacity, int consumers, Backpressure backpressure) {
+        this(capacity, consumers, backpressure, 64);
+    }
+
+    // capacity is the number of events each consumer's ring holds
+    public AsyncObserverDispatcher(int capacity, int consumers, Backpressure backpressure, int batchSize) {
+        if (capacity < 1 || consumers < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Capacity, consumers and batch size must be at least 1");
+        }
+        this.backpressure = backpressure;
+        this.rings = new Ring[consumers];
+        for (int i = 0; i < consumers; i++) {
+            rings[i] = new Ring(capacity, Math.min(batchSize, capacity), i);
+            rings[i].thread.start();
+        }
+    }
+
+    public void addObserver(GameObserver observer) {
+        observers.add(observer);
+    }
+
+    public void removeObserver(GameObserver observer) {
+        observers.remove(observer);
+    }
+
+    // Called by the board after every move; queues the move and returns right away
+    // (unless the ring is full and the policy says to wait)
+    @Override
+    public void update(Board board) {
+        if (closed) {
+            dropped.increment(); // Moves after close() are counted, so published + dropped is every move
+            return;
+        }
+        Ring ring = rings[(System.identityHashCode(board) & 0x7fffffff) % rings.length];
+        ring.publish(board, board.getLastMove(), System.nanoTime());
+    }
+
+    // Stops taking new events, lets the consumers deliver what is queued and waits for them
+    @Override
+    public void close() {
+        closed = true;
+        for (Ring ring : rings) {
+            ring.lock.lock();
+            try {
+                ring.notEmpty.signalAll();
+                ring.notFull.signalAll();
+            } finally {
+                ring.lock.unlock();
+            }
+        }
+        for (Ring ring : rings) {
+            try {
+                ring.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void recordLag(long nanos) {
+        totalLagNanos.add(nanos);
+        maxLagNanos.accumulateAndGet(nanos, Math::max);
+        lagHistogram.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+    }
+
+    // Events waiting in all rings right now
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Ring ring : rings) depth += ring.depth();
+        return depth;
+    }
+
+    // The most events that were ever waiting in one ring at the same time
+    public long getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    // Moves that were accepted, including the ones coalesced into an earlier event
+    public long getPublished() {
+        return sequence.get();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    // Moves that never got queued: the ring was full (DROP), the move was interrupted while waiting
+    // for room, or the dispatcher was closed
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getObserverErrors() {
+        return observerErrors.sum();
+    }
+
+    // Average time from a move until its observers were called
+    public double getAverageLagNanos() {
+        long count = delivered.sum();
+        return count == 0 ? 0 : (double) totalLagNanos.sum() / count;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    // Upper bound of the lag below which the given fraction of events was delivered (e.g. 0.99),
+    // exact to a factor of two
+    public long getLagPercentileNanos(double fraction) {
+        long total = 0;
+        for (int i = 0; i < 64; i++) total += lagHistogram.get(i);
+        long seen = 0;
+        for (int i = 0; i < 64; i++) {
+            seen += lagHistogram.get(i);
+            if (seen > 0 && seen >= fraction * total) return i >= 62 ? Long.MAX_VALUE : 1L << (i + 1);
+        }
+        return 0;
+    }
+
+    // All metrics on one line
+    public String metrics() {
+        return String.format("published %d, delivered %d in %d batches, dropped %d, coalesced %d, observer errors %d, "
+                        + "queue depth %d (max %d), lag avg %.1f us, p99 < %.1f us, max %.1f us",
+                getPublished(), getDelivered(), batches.sum(), getDropped(), getCoalesced(), getObserverErrors(),
+                getQueueDepth(), getMaxQueueDepth(), getAverageLagNanos() / 1e3,
+                getLagPercentileNanos(0.99) / 1e3, getMaxLagNanos() / 1e3);
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Answers, for every position of a PositionBatch, whether the side to move is in check, checkmated or
+// stalemated and how many legal moves it has. The batch is split into ranges on a fork-join pool; every
+// worker thread sets the positions up one after another on its own board, reusing its pieces, so
+// analyzing allocates nothing once the threads are warm. Results go into arrays the caller provides.
+// Usage: java BatchAnalyzer [positions] [threads]   measures positions/second on positions from random games
+public class BatchAnalyzer {
+    // What analyze writes into states
+    static final byte NORMAL = 0;
+    static final byte CHECK = 1;
+    static final byte CHECKMATE = 2;
+    static final byte STALEMATE = 3;
+    // Not a position that can come up in a game: not exactly one king per side, pieces sharing a square,
+    // a pawn on the first or last row, or the side that just moved still in check
+    static final byte INVALID = 4;
+
+    private static final int POSITIONS_PER_TASK = 1024;
+    private static final long FIRST_AND_LAST_ROWS = 0xffL | 0xffL << 56;
+    private static final ThreadLocal<Worker> WORKERS = ThreadLocal.withInitial(Worker::new);
+
+    private final ForkJoinPool pool;
+
+    public BatchAnalyzer(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        PositionBatch batch = randomPositions(count, new SplittableRandom(1));
+        byte[] states = new byte[count];
+        short[] legalMoves = new short[count];
+        BatchAnalyzer analyzer = new BatchAnalyzer(threads);
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            analyzer.analyze(batch, states, legalMoves);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d positions in %.3f s: %.0f positions/second on %d threads%n",
+                    count, seconds, count / seconds, threads);
+        }
+        int[] byState = new int[INVALID + 1];
+        long moves = 0;
+        for (int i = 0; i < count; i++) {
+            byState[states[i]]++;
+            moves += legalMoves[i];
+        }
+        System.out.printf("normal %d, check %d, checkmate %d, stalemate %d, invalid %d, %.1f legal moves on average%n",
+                byState[NORMAL], byState[CHECK], byState[CHECKMATE], byState[STALEMATE], byState[INVALID], moves / (double) count);
+        analyzer.shutdown();
+    }
+
+    // Fills states[i] and legalMoves[i] for every position i of the batch; returns once all are done
+    public void analyze(PositionBatch batch, byte[] states, short[] legalMoves) {
+        if (states.length < batch.size || legalMoves.length < batch.size) {
+            throw new IllegalArgumentException("Result arrays hold " + Math.min(states.length, legalMoves.length)
+                    + " positions, the batch has " + batch.size);
+        }
+        pool.invoke(new AnalysisTask(batch, states, legalMoves, 0, batch.size));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // Analyzes a range of a batch's positions, splitting it in halves while it is large
+    private static class AnalysisTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PositionBatch batch;
+        private final byte[] states;
+        private final short[] legalMoves;
+        private final int from;
+        private final int to;
+
+        AnalysisTask(PositionBatch batch, byte[] states, short[] legalMoves, int from, int to) {
+            this.batch = batch;
+            this.states = states;
+            this.legalMoves = legalMoves;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > POSITIONS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AnalysisTask(batch, states, legalMoves, from, middle),
+                        new AnalysisTask(batch, states, legalMoves, middle, to));
+                return;
+            }
+            Worker worker = WORKERS.get();
+            for (int i = from; i < to; i++) {
+                worker.analyze(batch, i, states, legalMoves);
+            }
+        }
+    }
+
+    // A thread's board, move list and pieces
+    private static class Worker {
+        private final Board board = new Board();
+        private final MoveList moves = new MoveList();
+        private final Piece[][] pieces = new Piece[12][0]; // Per color * 6 + type, as many as a position needed so far
+        private final long[] bitboards = new long[12]; // The position being set up
+
+        void analyze(PositionBatch batch, int i, byte[] states, short[] legalMoves) {
+            int color = batch.sideToMove[i];
+            if (!setUp(batch, i) || board.isKingInCheck(color ^ 1)) {
+                states[i] = INVALID;
+                legalMoves[i] = 0;
+                return;
+            }
+            MoveGenerator.generateLegal(board, color, moves);
+            boolean check = board.isKingInCheck(color);
+            legalMoves[i] = (short) moves.size();
+            if (moves.size() == 0) {
+                states[i] = check ? CHECKMATE : STALEMATE;
+            } else {
+                states[i] = check ? CHECK : NORMAL;
+            }
+        }
+
+        // Puts position i on the board; false if it is not a position a game can have
+        private boolean setUp(PositionBatch batch, int i) {
+            long occupied = 0;
+            for (int kind = 0; kind < 12; kind++) {
+                long bits = batch.pieces[kind][i];
+                if ((occupied & bits) != 0) return false;
+                occupied |= bits;
+            }
+            long pawns = batch.pieces[Position.PAWN][i] | batch.pieces[6 + Position.PAWN][i];
+            if ((pawns & FIRST_AND_LAST_ROWS) != 0 || Long.bitCount(batch.pieces[Position.KING][i]) != 1
+                    || Long.bitCount(batch.pieces[6 + Position.KING][i]) != 1) {
+                return false;
+            }
+
+            for (int kind = 0; kind < 12; kind++) {
+                bitboards[kind] = batch.pieces[kind][i];
+            }
+            board.setUp(bitboards, batch.sideToMove[i], batch.castlingRights[i], batch.epSquares[i], pieces);
+            return true;
+        }
+    }
+
+    // Positions from random games from the start position, every ply of them, for the measurement in main
+    private static PositionBatch randomPositions(int count, SplittableRandom random) {
+        PositionBatch batch = new PositionBatch(count);
+        Board board = new Board();
+        Fen fen = new Fen();
+        MoveList legal = new MoveList();
+        while (batch.size < count) {
+            fen.load(Fen.START, board);
+            int color = Position.WHITE;
+            for (int ply = 0; ply < 200 && batch.size < count; ply++) {
+                batch.add(board, color);
+                MoveGenerator.generateLegal(board, color, legal);
+                if (legal.size() == 0) break;
+                board.makeMove(legal.get(random.nextInt(legal.size())));
+                color ^= 1;
+            }
+        }
+        return batch;
+    }
+}
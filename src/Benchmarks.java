@@ -0,0 +1,318 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+// Micro benchmarks for the hot paths of the rules engine, run on a set of middlegame and endgame positions.
+// Works like a small JMH: warmup iterations first, then measured iterations, results fed into a sink so
+// the JIT can't drop the work. Besides the time per operation it reports the bytes allocated per operation
+// and the allocation rate (what JMH's gc profiler shows), read from the JVM's per-thread allocation counter.
+// The same operations also run under JMH (see jmh/): mvn -P jmh package, then java -jar target/benchmarks.jar -prof gc.
+// Usage: java Benchmarks [name filter] [--csv results.csv] [--tablebase directory]
+//   The CSV file is appended to, with a timestamp per row, so runs can be compared over time.
+//   With a tablebase directory (see TablebaseGenerator), probes are measured on random positions of every table.
+public class Benchmarks {
+    // The positions the benchmarks run on, as FEN text
+    static final String[] POSITIONS = {
+            // Middlegames
+            "r1bq1rk1/ppp2ppp/2np1n2/2b1p3/2B1P3/2PP1N2/PP3PPP/RNBQ1RK1 w - - 0 9",
+            "r1bq1rk1/pp1nbppp/2p1pn2/3p2B1/2PP4/2N1PN2/PPQ2PPP/R3KB1R b KQ - 3 8",
+            "r2q1rk1/1b2bppp/p2ppn2/1p6/3NP3/1BN1B3/PPP1QPPP/R4RK1 w - - 2 12",
+            // Endgames
+            "8/5pk1/6p1/8/3R4/6P1/r4PK1/8 w - - 0 40",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 b - - 0 1",
+            "8/8/8/4k3/8/8/3QK3/8 b - - 5 60",
+            // Checkmate (fool's mate) and stalemate
+            "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3",
+            "7k/5Q2/6K1/8/8/8/8/8 b - - 0 50",
+    };
+    // One legal move per position above, played by the makeMove benchmark (null where there is none)
+    private static final String[][] MOVES = {
+            {"C1", "G5"}, {"E6", "E5"}, {"F2", "F4"}, {"D4", "D7"}, {"H5", "C5"}, {"E5", "E4"}, null, null};
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long WARMUP_NANOS = 200_000_000L;
+    private static final long ITERATION_NANOS = 500_000_000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static volatile int sink; // Results end up here so the measured work can't be optimized away
+
+    // The operations operation(name) makes, in the order main runs them
+    static final String[] OPERATIONS = {"canMove.pawn", "canMove.knight", "canMove.bishop", "canMove.rook",
+            "canMove.queen", "canMove.king", "isKingInCheck", "isKingInCheck.afterChange", "isCheckmate",
+            "isStalemate", "Fen.load", "Fen.write"};
+    private static final String[] TYPE_NAMES = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+
+    public static void main(String[] args) throws IOException {
+        String filter = args.length > 0 && !args[0].startsWith("--") ? args[0] : "";
+        String csv = null;
+        String tablebaseDirectory = null;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--csv")) csv = args[i + 1];
+            if (args[i].equals("--tablebase")) tablebaseDirectory = args[i + 1];
+        }
+
+        List<String> results = new ArrayList<>();
+        System.out.printf("%-28s %12s %10s %12s %12s%n", "benchmark", "ns/op", "+-", "B/op", "MB/s alloc");
+
+        for (String name : OPERATIONS) {
+            if (name.contains(filter)) run(results, name, operation(name));
+        }
+        // The second time with Metrics switched on, to see what recording costs
+        for (boolean metrics : new boolean[]{false, true}) {
+            String name = metrics ? "ChessGameFacade.makeMove.metrics" : "ChessGameFacade.makeMove";
+            if (!name.contains(filter)) continue;
+            Metrics.setEnabled(metrics);
+            runWithSetup(results, name, makeMoves());
+        }
+        Metrics.setEnabled(false);
+
+        if (tablebaseDirectory != null) {
+            // Positions spread over the whole table, so most probes touch a page that isn't in the cache
+            Tablebase tablebase = Tablebase.open(Paths.get(tablebaseDirectory));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(tablebaseDirectory), "*.tb")) {
+                for (Path file : files) {
+                    String signature = file.getFileName().toString().replace(".tb", "");
+                    if (!("Tablebase.probe." + signature).contains(filter)) continue;
+                    EndgameTable table = EndgameTable.open(file, signature);
+                    Board[] probed = new Board[4096];
+                    int[] probedColors = new int[probed.length];
+                    tablebasePositions(table, probed, probedColors);
+                    int[] next = {0};
+                    run(results, "Tablebase.probe." + signature, () -> {
+                        int i = next[0]++ & (probed.length - 1);
+                        return tablebase.probe(probed[i], probedColors[i]);
+                    });
+                }
+            }
+        }
+
+        if (csv != null) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(csv, true))) {
+                long now = System.currentTimeMillis();
+                for (String result : results) {
+                    out.println(now + "," + result);
+                }
+            }
+        }
+    }
+
+    // One of the OPERATIONS on positions of its own; each call returns something derived from the result.
+    // Public, with makeMoves, for the JMH benchmarks (see jmh/), which run the same code.
+    public static IntSupplier operation(String name) {
+        Board[] boards = new Board[POSITIONS.length];
+        String[] sides = new String[POSITIONS.length];
+        int[] colors = new int[POSITIONS.length];
+        Fen fen = new Fen();
+        for (int i = 0; i < POSITIONS.length; i++) {
+            boards[i] = new Board();
+            fen.load(POSITIONS[i], boards[i]);
+            sides[i] = fen.getSideToMove();
+            colors[i] = Position.colorIndex(sides[i]);
+        }
+
+        int[] next = {0};
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            if (!name.equals("canMove." + TYPE_NAMES[type])) continue;
+            int[] calls = canMoveCalls(boards, type);
+            return () -> {
+                int i = next[0];
+                next[0] = i + 4 == calls.length ? 0 : i + 4;
+                Board board = boards[calls[i]];
+                int from = calls[i + 1];
+                int to = calls[i + 2];
+                return board.getPiece(from >>> 3, from & 7).canMove(from >>> 3, from & 7, to >>> 3, to & 7, board) ? 1 : 0;
+            };
+        }
+        switch (name) {
+            case "isKingInCheck":
+                return () -> {
+                    int i = next[0]++ % boards.length;
+                    return boards[i].isKingInCheck(colors[i]) ? 1 : 0;
+                };
+            case "isKingInCheck.afterChange":
+                return () -> {
+                    int i = next[0]++ % boards.length;
+                    Board board = boards[i];
+                    int king = board.getPosition().kingSquare(colors[i]);
+                    board.setPiece(king >>> 3, king & 7, board.getPiece(king >>> 3, king & 7)); // Same board, stale attack maps
+                    return board.isKingInCheck(colors[i]) ? 1 : 0;
+                };
+            case "isCheckmate":
+                return () -> {
+                    int i = next[0]++ % boards.length;
+                    return boards[i].isCheckmate(sides[i]) ? 1 : 0;
+                };
+            case "isStalemate":
+                return () -> {
+                    int i = next[0]++ % boards.length;
+                    return boards[i].isStalemate(sides[i]) ? 1 : 0;
+                };
+            case "Fen.load":
+                Board loaded = new Board();
+                return () -> {
+                    fen.load(POSITIONS[next[0]++ % POSITIONS.length], loaded);
+                    return fen.getFullmoveNumber();
+                };
+            case "Fen.write":
+                StringBuilder text = new StringBuilder(100);
+                return () -> {
+                    int i = next[0]++ % boards.length;
+                    text.setLength(0);
+                    Fen.write(boards[i], sides[i], 0, 1, text);
+                    return text.length();
+                };
+            default:
+                throw new IllegalArgumentException("Unknown benchmark " + name);
+        }
+    }
+
+    // makeMove changes the game, so every move is played on a fresh game: each get() sets up a game
+    // from the next position that has a move and returns the operation that plays it, which is all that is timed
+    public static Supplier<IntSupplier> makeMoves() {
+        int[] next = {0};
+        return () -> {
+            int i;
+            do {
+                i = next[0]++ % POSITIONS.length;
+            } while (MOVES[i] == null);
+            ChessGameFacade game = ChessGameFacade.fromFen(POSITIONS[i]);
+            String[] move = MOVES[i];
+            return () -> game.makeMove(move[0], move[1], "queen") ? 1 : 0;
+        };
+    }
+
+    // Measures an operation that can simply be repeated
+    private static void run(List<String> results, String name, IntSupplier operation) {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            repeat(operation, WARMUP_NANOS);
+        }
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        long operations = 0;
+        long totalNanos = 0;
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long count = repeat(operation, ITERATION_NANOS);
+            long elapsed = System.nanoTime() - start;
+            nanosPerOp[i] = (double) elapsed / count;
+            operations += count;
+            totalNanos += elapsed;
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        report(results, name, nanosPerOp, (double) allocated / operations, allocated, totalNanos);
+    }
+
+    // Measures an operation that needs fresh state every time (like JMH's Level.Invocation setup);
+    // only the operation itself is timed and counted for allocation
+    private static void runWithSetup(List<String> results, String name, Supplier<IntSupplier> setup) {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            long end = System.nanoTime() + WARMUP_NANOS;
+            while (System.nanoTime() < end) {
+                sink += setup.get().getAsInt();
+            }
+        }
+        double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+        long operations = 0;
+        long measuredNanos = 0;
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long iterationNanos = 0;
+            long count = 0;
+            long end = System.nanoTime() + ITERATION_NANOS;
+            while (System.nanoTime() < end) {
+                IntSupplier operation = setup.get();
+                long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                sink += operation.getAsInt();
+                iterationNanos += System.nanoTime() - start;
+                allocated += THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                count++;
+            }
+            nanosPerOp[i] = (double) iterationNanos / count;
+            operations += count;
+            measuredNanos += iterationNanos;
+        }
+        report(results, name, nanosPerOp, (double) allocated / operations, allocated, measuredNanos);
+    }
+
+    // Runs the operation for about the given time and returns how often it ran
+    private static long repeat(IntSupplier operation, long nanos) {
+        long count = 0;
+        int result = 0;
+        long end = System.nanoTime() + nanos;
+        do {
+            // Check the clock only every 256 calls so it doesn't dominate fast operations
+            for (int i = 0; i < 256; i++) {
+                result += operation.getAsInt();
+            }
+            count += 256;
+        } while (System.nanoTime() < end);
+        sink += result;
+        return count;
+    }
+
+    private static void report(List<String> results, String name, double[] nanosPerOp,
+                               double bytesPerOp, long allocated, long nanos) {
+        double mean = 0;
+        for (double value : nanosPerOp) mean += value;
+        mean /= nanosPerOp.length;
+        double variance = 0;
+        for (double value : nanosPerOp) variance += (value - mean) * (value - mean);
+        double deviation = Math.sqrt(variance / Math.max(1, nanosPerOp.length - 1));
+        double allocationRate = allocated / 1e6 / (nanos / 1e9);
+        System.out.printf("%-28s %12.1f %10.1f %12.1f %12.1f%n", name, mean, deviation, bytesPerOp, allocationRate);
+        results.add(String.format("%s,%.1f,%.1f,%.1f,%.1f", name, mean, deviation, bytesPerOp, allocationRate));
+    }
+
+    // Fills boards with random legal positions of the table and colors with their side to move
+    private static void tablebasePositions(EndgameTable table, Board[] boards, int[] colors) {
+        Random random = new Random(42);
+        int[] squares = new int[table.getPieces()];
+        for (int i = 0; i < boards.length; ) {
+            int index = random.nextInt(table.size());
+            if (table.value(index) == EndgameTable.INVALID) continue;
+            colors[i] = EndgameTable.decode(index, squares, squares.length);
+            boards[i] = new Board();
+            for (int slot = 0; slot < squares.length; slot++) {
+                String color = table.color(slot) == Position.WHITE ? "white" : "black";
+                boards[i].setPiece(squares[slot] >>> 3, squares[slot] & 7, PieceFactory.createPiece(table.type(slot), color));
+            }
+            i++;
+        }
+    }
+
+    // Every (position, start square, end square) a piece of the given type can be asked about,
+    // flattened as groups of four ints (the fourth is unused padding)
+    private static int[] canMoveCalls(Board[] boards, int type) {
+        List<Integer> calls = new ArrayList<>();
+        for (int b = 0; b < boards.length; b++) {
+            for (int from = 0; from < 64; from++) {
+                Piece piece = boards[b].getPiece(from >>> 3, from & 7);
+                if (piece == null || piece.getType() != type) continue;
+                for (int to = 0; to < 64; to++) {
+                    calls.add(b);
+                    calls.add(from);
+                    calls.add(to);
+                    calls.add(0);
+                }
+            }
+        }
+        int[] result = new int[calls.size()];
+        for (int i = 0; i < result.length; i++) result[i] = calls.get(i);
+        return result;
+    }
+}
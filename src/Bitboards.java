@@ -0,0 +1,83 @@
+// Precomputed bitboard tables shared by move generation and attack detection.
+// Squares use the same numbering as Position (x * 8 + y).
+class Bitboards {
+    static final long[] KNIGHT_ATTACKS = new long[64]; // Squares a knight on each square can reach.
+    static final long[] KING_ATTACKS = new long[64]; // Squares a king on each square can reach.
+    static final long[][] PAWN_ATTACKS = new long[2][64]; // Squares a pawn of each color captures on, per square.
+
+    private static final int[][] KNIGHT_STEPS = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+    private static final int[][] KING_STEPS = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
+    private static final int[][] WHITE_PAWN_STEPS = {{-1, -1}, {-1, 1}}; // White moves up (towards row 0)
+    private static final int[][] BLACK_PAWN_STEPS = {{1, -1}, {1, 1}};
+
+    // The eight sliding directions as {x step, y step}. The first four move towards higher square
+    // indexes, the last four towards lower ones, which decides how the nearest blocker is found.
+    private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}, {-1, 0}, {0, -1}, {-1, -1}, {-1, 1}};
+    private static final long[][] RAYS = new long[8][64]; // Squares from each square to the edge, per direction.
+    // Squares strictly between two squares on the same line or diagonal (0 when they don't share one).
+    static final long[][] BETWEEN = new long[64][64];
+
+    static {
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                KNIGHT_ATTACKS[x * 8 + y] = steps(x, y, KNIGHT_STEPS);
+                KING_ATTACKS[x * 8 + y] = steps(x, y, KING_STEPS);
+                PAWN_ATTACKS[Position.WHITE][x * 8 + y] = steps(x, y, WHITE_PAWN_STEPS);
+                PAWN_ATTACKS[Position.BLACK][x * 8 + y] = steps(x, y, BLACK_PAWN_STEPS);
+                for (int d = 0; d < 8; d++) {
+                    int toX = x + DIRECTIONS[d][0];
+                    int toY = y + DIRECTIONS[d][1];
+                    while (toX >= 0 && toX < 8 && toY >= 0 && toY < 8) {
+                        RAYS[d][x * 8 + y] |= 1L << (toX * 8 + toY);
+                        toX += DIRECTIONS[d][0];
+                        toY += DIRECTIONS[d][1];
+                    }
+                }
+            }
+        }
+        for (int from = 0; from < 64; from++) {
+            for (int d = 0; d < 8; d++) {
+                long ray = RAYS[d][from];
+                while (ray != 0) {
+                    int to = Long.numberOfTrailingZeros(ray);
+                    BETWEEN[from][to] = RAYS[d][from] & ~RAYS[d][to] & ~(1L << to);
+                    ray &= ray - 1;
+                }
+            }
+        }
+    }
+
+    // Squares a rook on the given square reaches, stopping at (and including) the first piece in each direction.
+    static long rookAttacks(int square, long occupied) {
+        return ray(0, square, occupied) | ray(1, square, occupied) | ray(4, square, occupied) | ray(5, square, occupied);
+    }
+
+    // Squares a bishop on the given square reaches, stopping at (and including) the first piece in each direction.
+    static long bishopAttacks(int square, long occupied) {
+        return ray(2, square, occupied) | ray(3, square, occupied) | ray(6, square, occupied) | ray(7, square, occupied);
+    }
+
+    // One direction of a sliding piece: the whole ray, cut off behind the nearest blocker.
+    private static long ray(int direction, int square, long occupied) {
+        long attacks = RAYS[direction][square];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            int nearest = direction < 4 ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+            attacks ^= RAYS[direction][nearest];
+        }
+        return attacks;
+    }
+
+    // Collects every on-board square reached by a single step from (x, y).
+    private static long steps(int x, int y, int[][] steps) {
+        long result = 0L;
+        for (int[] step : steps) {
+            int toX = x + step[0];
+            int toY = y + step[1];
+            if (toX >= 0 && toX < 8 && toY >= 0 && toY < 8) {
+                result |= 1L << (toX * 8 + toY);
+            }
+        }
+        return result;
+    }
+}
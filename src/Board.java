@@ -1,29 +1,70 @@
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 // This class represents the chessboard and handles its operations.
+// Every game has its own board; a board is not thread-safe, so one game's board should only be
+// used by one thread at a time (GameSession takes care of that).
 class Board {
-    private static Board instance; // A single instance of the chessboard (Singleton Pattern).
-    private final Square[][] squares; // The 8x8 grid of squares on the board.
+    // The start squares of the kings and rooks, which decide the castling rights
+    private static final long CASTLING_SQUARES = 1L << Position.square(7, 4) | 1L << Position.square(7, 7)
+            | 1L << Position.square(7, 0) | 1L << Position.square(0, 4) | 1L << Position.square(0, 7) | 1L << Position.square(0, 0);
+
+    private final Piece[] squares; // The 64 squares of the board, indexed by Position.square(x, y).
+    private final Position position; // Bitboards kept in sync with the squares.
     private List<GameObserver> observers; // List of observers to notify about changes.
+    private final MoveList scratchMoves; // Reused by the checkmate and stalemate tests so they don't allocate.
+
+    // Undo stack for makeMove/unmakeMove. Each entry is spread over parallel arrays so that
+    // making and undoing moves never allocates (the arrays only grow for very long games).
+    private int[] undoMoves = new int[256]; // The move that was made.
+    private Piece[] undoMoved = new Piece[256]; // The piece that moved (a pawn stays a pawn even if it promoted).
+    private Piece[] undoCaptured = new Piece[256]; // The piece that was captured, or null.
+    // Moved flag of the piece (bit 0), attack map validity (bits 1-2), en passant square + 1 (bits 3-9),
+    // castling rights (bits 10-13).
+    private int[] undoState = new int[256];
+    private long[] undoAttacks = new long[512]; // Both attack maps before the move.
+    private int undoSize;
 
     // Constructor initializes the board with empty squares.
-    private Board() {
-        squares = new Square[8][8];
+    public Board() {
+        squares = new Piece[64];
+        position = new Position();
         observers = new ArrayList<>();
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                squares[i][j] = new Square();
+        scratchMoves = new MoveList();
+    }
+
+    // Create an independent copy of this board, so several games or searches can run in parallel.
+    // Pieces are copied too because they carry their own state (e.g. whether the king has moved).
+    // Observers and the undo stack are not copied.
+    public Board copy() {
+        Board copy = new Board();
+        copy.position.copyFrom(position);
+        for (int i = 0; i < 64; i++) {
+            if (squares[i] != null) {
+                copy.squares[i] = squares[i].copy();
             }
         }
+        return copy;
     }
 
-    /// Get the single instance of the board (Singleton Pattern).
-    public static Board getInstance() {
-        if (instance == null) {
-            instance = new Board(); // Create the instance if it doesn't exist
-        }
-        return instance;
+    // Take every piece off the board and forget the moves that can be undone, so the board can be reused.
+    public void clear() {
+        Arrays.fill(squares, null);
+        position.clear();
+        undoSize = 0;
+    }
+
+    // Get the bitboards describing the pieces on this board.
+    Position getPosition() {
+        return position;
+    }
+
+    // Get the Zobrist hash of the position for the given side to move.
+    // Two boards with the same pieces on the same squares, the same castling rights and en passant square
+    // and the same side to move have the same hash.
+    public long getHash(String sideToMove) {
+        return Zobrist.withSideToMove(position.hash(), Position.colorIndex(sideToMove));
     }
 
     // Add an observer to the list
@@ -38,58 +79,286 @@ class Board {
 
     // Notify all observers about a change
     private void notifyObservers() {
+        boolean timed = Metrics.isEnabled();
+        long startTime = timed ? System.nanoTime() : 0;
         for (GameObserver observer : observers) {
             observer.update(this);  // Notify observer about the board update
         }
+        if (timed) Metrics.OBSERVERS.record(System.nanoTime() - startTime);
     }
 
     // Get the piece on a specific square.
     public Piece getPiece(int x, int y) {
-        return squares[x][y].getPiece();
+        return squares[x * 8 + y];
     }
 
     // Place a piece on a specific square.
     public void setPiece(int x, int y, Piece piece) {
-        squares[x][y].setPiece(piece);
+        int square = Position.square(x, y);
+        Piece old = squares[square];
+        if (old != null) {
+            position.remove(square, old.getColorIndex(), old.getType());
+        }
+        if (piece != null) {
+            position.add(square, piece.getColorIndex(), piece.getType());
+        }
+        squares[square] = piece;
+        if ((CASTLING_SQUARES & (1L << square)) != 0) {
+            refreshCastlingRights();
+        }
+    }
+
+    // Works the castling rights out from the pieces: a right is there while the king and that rook
+    // stand on their start squares and have never moved. setPiece calls it when one of those squares
+    // changes; call it after changing the moved flags of pieces already on the board.
+    void refreshCastlingRights() {
+        int rights = 0;
+        if (isUnmoved(7, 4, Position.WHITE, Position.KING)) {
+            if (isUnmoved(7, 7, Position.WHITE, Position.ROOK)) rights |= Position.WHITE_KING_SIDE;
+            if (isUnmoved(7, 0, Position.WHITE, Position.ROOK)) rights |= Position.WHITE_QUEEN_SIDE;
+        }
+        if (isUnmoved(0, 4, Position.BLACK, Position.KING)) {
+            if (isUnmoved(0, 7, Position.BLACK, Position.ROOK)) rights |= Position.BLACK_KING_SIDE;
+            if (isUnmoved(0, 0, Position.BLACK, Position.ROOK)) rights |= Position.BLACK_QUEEN_SIDE;
+        }
+        position.setCastlingRights(rights);
+    }
+
+    // Replaces everything on the board with the pieces of the bitboards (indexed color * 6 + type), the
+    // castling rights and the en passant square, like Fen.load does from text. The pieces come from
+    // spares (one array per bitboard, grown when a position needs more), so callers that set up many
+    // positions can reuse them. Doesn't check that the position makes sense.
+    void setUp(long[] bitboards, int sideToMove, int castlingRights, int epSquare, Piece[][] spares) {
+        clear();
+        for (int kind = 0; kind < 12; kind++) {
+            int n = 0;
+            for (long bits = bitboards[kind]; bits != 0; bits &= bits - 1) {
+                if (n == spares[kind].length) {
+                    spares[kind] = Arrays.copyOf(spares[kind], n + 1);
+                    spares[kind][n] = PieceFactory.createPiece(kind % 6, kind < 6 ? "white" : "black");
+                }
+                Piece piece = spares[kind][n++];
+                piece.setMoved(true); // Only kings and rooks with a castling right count as unmoved
+                int square = Long.numberOfTrailingZeros(bits);
+                setPiece(square >>> 3, square & 7, piece);
+            }
+        }
+        if (castlingRights != 0) {
+            unmove(castlingRights, Position.WHITE_KING_SIDE, 7, 7);
+            unmove(castlingRights, Position.WHITE_QUEEN_SIDE, 7, 0);
+            unmove(castlingRights, Position.BLACK_KING_SIDE, 0, 7);
+            unmove(castlingRights, Position.BLACK_QUEEN_SIDE, 0, 0);
+            refreshCastlingRights(); // A right without its king and rook in place is dropped
+        }
+        setEnPassant(sideToMove, epSquare);
+    }
+
+    // Marks the king and the rook of a castling right as unmoved if the right is given
+    private void unmove(int rights, int right, int row, int rookColumn) {
+        if ((rights & right) == 0) return;
+        Piece king = squares[Position.square(row, 4)];
+        Piece rook = squares[Position.square(row, rookColumn)];
+        if (king != null) king.setMoved(false);
+        if (rook != null) rook.setMoved(false);
+    }
+
+    // Sets the en passant square from the square the last double step skipped (or -1). Like after a move,
+    // it is only kept when the pawn that skipped it is there and an enemy pawn can take it.
+    void setEnPassant(int sideToMove, int skipped) {
+        if (skipped < 0) return;
+        int mover = sideToMove ^ 1; // The side that made the double step
+        int pawn = skipped + (mover == Position.WHITE ? -8 : 8); // Where that pawn stands now
+        if (skipped >>> 3 == (mover == Position.WHITE ? 5 : 2) && (position.pieces(mover, Position.PAWN) & (1L << pawn)) != 0) {
+            position.setEpSquare(position.epSquareAfter(mover, 2 * skipped - pawn, pawn));
+        }
+    }
+
+    private boolean isUnmoved(int x, int y, int color, int type) {
+        Piece piece = squares[Position.square(x, y)];
+        return piece != null && piece.getColorIndex() == color && piece.getType() == type && !piece.hasMoved();
+    }
+
+    // The move of the piece on one square to another, flagged as castling when it is a king moving two
+    // columns and as en passant when it is a pawn moving diagonally onto the en passant square.
+    // Doesn't check that the move is legal.
+    int moveFor(int from, int to, int promotion) {
+        int move = Move.create(from, to, promotion);
+        Piece piece = squares[from];
+        if (piece == null) return move;
+        if (piece.getType() == Position.KING && (from >>> 3) == (to >>> 3) && Math.abs((from & 7) - (to & 7)) == 2) {
+            return move | Move.CASTLING;
+        }
+        if (piece.getType() == Position.PAWN && (from & 7) != (to & 7) && to == position.getEpSquare()) {
+            return move | Move.EN_PASSANT;
+        }
+        return move;
     }
 
     // Move a piece from one square to another.
     public void movePiece(Piece piece, int startX, int startY, int endX, int endY) {
-        // Simplified movement logic
-        squares[endX][endY].setPiece(piece); // Place the piece on the new square.
-        squares[startX][startY].setPiece(null); // Remove the piece from the old square.
-        
+        if (getPiece(startX, startY) != piece) {
+            setPiece(startX, startY, piece); // The piece wasn't placed on its start square yet
+        }
+        playMove(moveFor(Position.square(startX, startY), Position.square(endX, endY), Position.PAWN));
+    }
+
+    // Make a move that is part of the game and tell the observers about it.
+    public void playMove(int move) {
+        makeMove(move);
         notifyObservers(); // Notify observers about the move.
     }
 
-    // Check if the king of a given color is in check.
-    public boolean isKingInCheck(String color) {
-        int kingX = -1, kingY = -1;
-        // Find position of the king of the given color
-        // Not the most efficient  way technically board could hold an instance of a king
-        // but in general this looks cleaner
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece piece = getPiece(i, j);
-                if (piece instanceof King && piece.getColor().equals(color)) {
-                    kingX = i;
-                    kingY = j;
-                    break;
-                }
-            }
+    // Make a move and remember everything needed to take it back with unmakeMove().
+    // Observers are not notified, so this can be used to try out moves.
+    public void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int capturedSquare = Move.isEnPassant(move) ? Move.enPassantVictim(move) : to;
+        Piece piece = squares[from];
+        Piece captured = squares[capturedSquare];
+
+        if (undoSize == undoMoves.length) {
+            growUndoStack();
         }
-        // Check if there is any piece of opposite color that can move to the square of the attacker
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                Piece attacker = getPiece(i, j);
-                if (attacker != null && !attacker.getColor().equals(color)) {
-                    if (attacker.canMove(i, j, kingX, kingY, this)) {
-                        return true;
-                    }
-                }
-            }
+        int entry = undoSize++;
+        undoMoves[entry] = move;
+        undoMoved[entry] = piece;
+        undoCaptured[entry] = captured;
+        undoState[entry] = (piece.hasMoved() ? 1 : 0)
+                | (position.isAttackMapValid(Position.WHITE) ? 2 : 0)
+                | (position.isAttackMapValid(Position.BLACK) ? 4 : 0)
+                | ((position.getEpSquare() + 1) << 3)
+                | (position.getCastlingRights() << 10);
+        undoAttacks[entry * 2] = position.cachedAttacks(Position.WHITE);
+        undoAttacks[entry * 2 + 1] = position.cachedAttacks(Position.BLACK);
+
+        int color = piece.getColorIndex();
+        int type = piece.getType();
+        if (captured != null) {
+            position.remove(capturedSquare, captured.getColorIndex(), captured.getType());
+            squares[capturedSquare] = null;
+        }
+        position.remove(from, color, type);
+        squares[from] = null;
+
+        int promotion = Move.promotion(move);
+        Piece placed = promotion == Position.PAWN ? piece : PieceFactory.createPiece(promotion, piece.getColor());
+        position.add(to, color, placed.getType());
+        squares[to] = placed;
+        piece.setMoved(true);
+        placed.setMoved(true);
+
+        if (Move.isCastling(move)) {
+            int rookFrom = Move.castlingRookFrom(move);
+            int rookTo = Move.castlingRookTo(move);
+            Piece rook = squares[rookFrom];
+            position.remove(rookFrom, color, Position.ROOK);
+            position.add(rookTo, color, Position.ROOK);
+            squares[rookFrom] = null;
+            squares[rookTo] = rook;
+            rook.setMoved(true);
         }
-        return false;
+
+        int rights = position.getCastlingRights();
+        if (rights != 0) {
+            position.setCastlingRights(position.castlingRightsAfter(from, to));
+        }
+        // Remember the square a pawn skipped with a double step, if an enemy pawn can take it there
+        position.setEpSquare(type == Position.PAWN ? position.epSquareAfter(color, from, to) : -1);
+    }
+
+    // Take back the last move made with makeMove(), restoring the board exactly.
+    public void unmakeMove() {
+        int entry = --undoSize;
+        int move = undoMoves[entry];
+        int from = Move.from(move);
+        int to = Move.to(move);
+        Piece piece = undoMoved[entry];
+        Piece captured = undoCaptured[entry];
+        int state = undoState[entry];
+
+        Piece placed = squares[to];
+        position.remove(to, placed.getColorIndex(), placed.getType());
+        squares[to] = null;
+        if (Move.isCastling(move)) {
+            int rookFrom = Move.castlingRookFrom(move);
+            int rookTo = Move.castlingRookTo(move);
+            Piece rook = squares[rookTo];
+            position.remove(rookTo, piece.getColorIndex(), Position.ROOK);
+            position.add(rookFrom, piece.getColorIndex(), Position.ROOK);
+            squares[rookTo] = null;
+            squares[rookFrom] = rook;
+            rook.setMoved(false); // Only a rook that never moved can castle
+        }
+        if (captured != null) {
+            int capturedSquare = Move.isEnPassant(move) ? Move.enPassantVictim(move) : to;
+            squares[capturedSquare] = captured;
+            position.add(capturedSquare, captured.getColorIndex(), captured.getType());
+        }
+        squares[from] = piece;
+        position.add(from, piece.getColorIndex(), piece.getType());
+        piece.setMoved((state & 1) != 0);
+
+        position.setEpSquare((state >>> 3 & 127) - 1);
+        position.setCastlingRights(state >>> 10 & 15);
+        position.restoreAttacks(undoAttacks[entry * 2], (state & 2) != 0, undoAttacks[entry * 2 + 1], (state & 4) != 0);
+
+        // Let go of the pieces so the stack doesn't keep captured pieces alive
+        undoMoved[entry] = null;
+        undoCaptured[entry] = null;
+    }
+
+    // Number of moves that can currently be taken back.
+    public int getUndoCount() {
+        return undoSize;
+    }
+
+    // The last move made that can still be taken back, or 0 if there is none.
+    public int getLastMove() {
+        return undoSize > 0 ? undoMoves[undoSize - 1] : 0;
+    }
+
+    private void growUndoStack() {
+        int capacity = undoMoves.length * 2;
+        undoMoves = Arrays.copyOf(undoMoves, capacity);
+        undoMoved = Arrays.copyOf(undoMoved, capacity);
+        undoCaptured = Arrays.copyOf(undoCaptured, capacity);
+        undoState = Arrays.copyOf(undoState, capacity);
+        undoAttacks = Arrays.copyOf(undoAttacks, capacity * 2);
+    }
+
+    // Check if the king of a given color is in check.
+    public boolean isKingInCheck(String color) {
+        if (!Metrics.isEnabled()) return isKingInCheck(Position.colorIndex(color));
+        long startTime = System.nanoTime();
+        boolean check = isKingInCheck(Position.colorIndex(color));
+        Metrics.KING_IN_CHECK.record(System.nanoTime() - startTime);
+        return check;
+    }
+
+    // Same as above, but with the color index used by Position.
+    // The king is found from its bitboard and the enemy attack map answers the question,
+    // so no square scan or canMove call is needed.
+    boolean isKingInCheck(int colorIndex) {
+        int king = position.kingSquare(colorIndex);
+        if (king < 0) return false; // A board set up by hand may not have a king
+        return (position.attacks(colorIndex ^ 1) & (1L << king)) != 0;
+    }
+
+    // Tries a move and checks whether it leaves the king of the given color in check.
+    // The board is restored before returning.
+    boolean leavesKingInCheck(int move, int colorIndex) {
+        makeMove(move);
+        // Every trial changes the position, so ask about the king's square directly instead of building a full attack map
+        int king = position.kingSquare(colorIndex);
+        boolean check = king >= 0 && position.isAttacked(king, colorIndex ^ 1);
+        unmakeMove();
+        return check;
+    }
+
+    // Check if the given color has at least one move that doesn't leave its king in check.
+    public boolean hasLegalMove(String color) {
+        return MoveGenerator.hasLegalMove(this, Position.colorIndex(color), scratchMoves);
     }
     
     // If king is in check and cannot avoid it, it's checkmate
@@ -97,33 +366,14 @@ class Board {
         return isKingInCheck(color) && canAvoidCheck(color);
     }
 
+    // Returns true when none of the moves of the given color get (or keep) its king out of check.
+    // Only the moves the generator lists are tried, instead of every piece against all 64 squares.
     private boolean canAvoidCheck(String color) {
-        // Iterate over each square in the board
-        for (int startX = 0; startX < 8; startX++) {
-            for (int startY = 0; startY < 8; startY++) {
-                // Attempt to get a piece from each square
-                Piece piece = getPiece(startX, startY);
-                // if there is a piece that's same as color as input
-                if (piece != null && piece.getColor().equals(color)) {
-                    for (int endX = 0; endX < 8; endX++) {
-                        for (int endY = 0; endY < 8; endY++) {
-                            // This checks if moving any of the pieces anywhere could prevent being checked
-                            // If there is at least one outcome that let's us escape we can return false
-                            if (piece.canMove(startX, startY, endX, endY, this)) {
-                                Piece captured = getPiece(endX, endY);
-                                setPiece(endX, endY, piece);
-                                setPiece(startX, startY, null);
-                                boolean check = isKingInCheck(color);
-                                setPiece(startX, startY, piece);
-                                setPiece(endX, endY, captured);
-                                if (!check) return false;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return true;
+        if (!Metrics.isEnabled()) return !hasLegalMove(color);
+        long startTime = System.nanoTime();
+        boolean stuck = !hasLegalMove(color);
+        Metrics.AVOID_CHECK.record(System.nanoTime() - startTime);
+        return stuck;
     }
 
     // If King isn't in check but there also aren't any legal moves it's a stalemate
@@ -133,15 +383,21 @@ class Board {
 
     // Display the board with correct chess notation
     public void display() {
-        System.out.println("  A B C D E F G H");
+        System.out.print(this);
+    }
+
+    // The board drawn the same way display() prints it
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("  A B C D E F G H\n");
         for (int i = 0; i < 8; i++) {
-            System.out.print(8 - i + " ");
+            text.append(8 - i).append(' ');
             for (int j = 0; j < 8; j++) {
-                Piece piece = squares[i][j].getPiece();
-                System.out.print((piece == null ? "." : piece.getSymbol()) + " ");
+                Piece piece = squares[i * 8 + j];
+                text.append(piece == null ? "." : piece.getSymbol()).append(' ');
             }
-            System.out.println(8 - i);
+            text.append(8 - i).append('\n');
         }
-        System.out.println("  A B C D E F G H");
+        return text.append("  A B C D E F G H\n").toString();
     }
 }
@@ -1,34 +1,29 @@
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
-// Represents a square on the chessboard.
-// Each square can hold one chess piece or be empty.
-class Square {
-    // The piece on this square, or null if it's empty.
-    private Piece piece;
-
-    // Gets the piece on this square.
-    public Piece getPiece() {
-        return piece;
-    }
-
-    // Places a piece on this square.
-    public void setPiece(Piece piece) {
-        this.piece = piece;
-    }
-}
-
 // Main class to run the chess game
+// Usage: java ChessGame [computer side: white/black/both/none] [milliseconds per computer move] [search threads] [opening book]
 public class ChessGame {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         ChessGameFacade chessGame = new ChessGameFacade(); // Creates a new game using the facade.
         Scanner scanner = new Scanner(System.in); // Reads user input.
 
+        // Decide who plays each side: a person at the console or the computer.
+        String computerSide = args.length > 0 ? args[0].toLowerCase() : "none";
+        long timeMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        OpeningBook book = args.length > 3 ? new OpeningBook(Paths.get(args[3])) : null;
+        Player human = new HumanPlayer(scanner);
+        Player white = computerSide.equals("white") || computerSide.equals("both") ? new ComputerPlayer(timeMillis, threads, book) : human;
+        Player black = computerSide.equals("black") || computerSide.equals("both") ? new ComputerPlayer(timeMillis, threads, book) : human;
+
         // Main game loop that keeps running until the game ends.
         while (true) {
             chessGame.displayBoard();
             System.out.println(chessGame.getCurrentPlayer() + "'s turn.");
-            System.out.print("Enter your move (e.g., A2 to A3): ");
-            String move = scanner.nextLine().trim().toUpperCase();
+            Player player = chessGame.getCurrentPlayer().equals("white") ? white : black;
+            String move = player.nextMove(chessGame);
 
             // Split the input into the starting and ending positions.
             String[] parts = move.split(" TO ");
@@ -36,15 +31,34 @@ public class ChessGame {
                 System.out.println("Invalid input. Use 'start to end' format (e.g., A2 to A3).");
                 continue;
             }
+            // The end can be followed by the piece a pawn promotes to (e.g., E7 to E8 queen).
+            String[] end = parts[1].split(" ");
+            String promotion = end.length > 1 ? end[end.length - 1] : null;
 
-            // Store the current player before making a move.
-            String temp = chessGame.getCurrentPlayer();
-            if (chessGame.makeMove(parts[0], parts[1]) ) {
-                if(chessGame.getCurrentPlayer().equals(temp)){
-                    break; // Game over
-                }
-            } else {
+            boolean moved;
+            try {
+                moved = chessGame.makeMove(parts[0], end[0], promotion);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                continue;
+            }
+            if (!moved) {
+                System.out.println(chessGame.getLastError());
                 System.out.println("Invalid move. Try again.");
+                continue;
+            }
+
+            // Check for game-ending conditions
+            GameStatus status = chessGame.getStatus();
+            if (status == GameStatus.CHECKMATE) {
+                System.out.println("Checkmate! " + chessGame.getCurrentPlayer() + " wins!");
+            } else if (status == GameStatus.STALEMATE) {
+                System.out.println("Stalemate! It's a draw.");
+            } else if (status == GameStatus.REPETITION) {
+                System.out.println("Threefold repetition! It's a draw.");
+            }
+            if (status != GameStatus.ACTIVE) {
+                break; // Game over
             }
         }
 
@@ -52,4 +66,3 @@ public class ChessGame {
         scanner.close();
     }
 }
-
@@ -1,13 +1,102 @@
 import java.util.*;
 
 class ChessGameFacade {
+    private static final String[] PIECE_NAMES = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+
     private Board board;
     private String currentPlayer;
+    private GameStatus status = GameStatus.ACTIVE;
+    private String lastError; // Why the last move was rejected, or null if it was played.
+    // Hashes of the positions since the last capture or pawn move; earlier ones can't come back.
+    private long[] positionHistory = new long[128];
+    private int historySize;
+    private int halfmoveClock; // Moves since the last capture or pawn move, counting each side's move.
+    private int fullmoveNumber = 1; // Starts at 1 and goes up after every black move.
+    // Where the game began and the moves since, newest first, for snapshot(); snapshots share them.
+    private GameSnapshot start;
+    private GameSnapshot.Line line;
+    // Legal moves of the player to move, worked out on the first query and kept until the next move,
+    // so clients asking again and again about the same position don't generate moves every time.
+    private final MoveList legalMoves = new MoveList();
+    private final long[] legalTargets = new long[64]; // Per start square, where its piece may legally go
+    private boolean legalMovesKnown;
+    private List<String> legalMoveNames; // getLegalMoves() text, made on the first call
 
     public ChessGameFacade() {
-        this.board = Board.getInstance();
+        this(new Board());
+    }
+
+    // Starts a new game on the given (empty) board
+    public ChessGameFacade(Board board) {
+        this.board = board;
         this.currentPlayer = "white";
         setupBoard();
+        recordPosition(board.getHash(currentPlayer), true);
+        markStart();
+    }
+
+    // Continues a game from the position already set up on the board, with the given player to move
+    public ChessGameFacade(Board board, String currentPlayer) {
+        this.board = board;
+        this.currentPlayer = currentPlayer;
+        recordPosition(board.getHash(currentPlayer), true);
+        markStart();
+    }
+
+    // Continues a game from a position given as FEN text, e.g. Fen.START
+    public static ChessGameFacade fromFen(String fen) {
+        Board board = new Board();
+        Fen reader = new Fen();
+        reader.load(fen, board);
+        ChessGameFacade game = new ChessGameFacade(board, reader.getSideToMove());
+        game.halfmoveClock = reader.getHalfmoveClock();
+        game.fullmoveNumber = reader.getFullmoveNumber();
+        game.markStart();
+        return game;
+    }
+
+    // Continues a game from a snapshot on a board of its own; the snapshot and the game it came from
+    // are left as they are, so one snapshot can be played on in many different ways
+    public static ChessGameFacade fromSnapshot(GameSnapshot snapshot) {
+        Board board = new Board();
+        snapshot.setUp(board);
+        return new ChessGameFacade(board, snapshot);
+    }
+
+    private ChessGameFacade(Board board, GameSnapshot snapshot) {
+        this.board = board;
+        this.currentPlayer = snapshot.getCurrentPlayer();
+        this.status = snapshot.getStatus();
+        this.halfmoveClock = snapshot.getHalfmoveClock();
+        this.fullmoveNumber = snapshot.getFullmoveNumber();
+        this.start = snapshot.getStart();
+        this.line = snapshot.getLine();
+        // The positions since the last capture or pawn move, to go on counting repetitions
+        for (GameSnapshot.Line node = line; ; node = node.previous) {
+            if (historySize == positionHistory.length) {
+                positionHistory = Arrays.copyOf(positionHistory, historySize * 2);
+            }
+            if (node == null) {
+                positionHistory[historySize++] = start.getHash();
+                break;
+            }
+            positionHistory[historySize++] = node.hash;
+            if (node.irreversible) break;
+        }
+    }
+
+    // The game as it is now, as an unchangeable snapshot that doesn't follow later moves. Cheap: the
+    // moves played so far are shared with the game and with other snapshots, only the position is copied.
+    public GameSnapshot snapshot() {
+        return new GameSnapshot(board, Position.colorIndex(currentPlayer), status, halfmoveClock, fullmoveNumber,
+                start, line);
+    }
+
+    // Makes the position now the one the game's snapshots begin from
+    private void markStart() {
+        start = null;
+        line = null;
+        start = snapshot();
     }
 
     private void setupBoard() {
@@ -34,6 +123,26 @@ class ChessGameFacade {
     }
 
     public boolean makeMove(String start, String end) {
+        return makeMove(start, end, null);
+    }
+
+    // Makes a move; promotion names the piece a pawn reaching the last row becomes (e.g. "queen")
+    // and must be given for such a move (isPromotion tells when). Castling is the king's move of two
+    // squares towards the rook (e.g. "E1" to "G1"), en passant the pawn's diagonal move to the skipped square.
+    public boolean makeMove(String start, String end, String promotion) {
+        if (!Metrics.isEnabled()) return tryMove(start, end, promotion);
+        long startTime = System.nanoTime();
+        try {
+            return tryMove(start, end, promotion);
+        } finally {
+            Metrics.MAKE_MOVE.record(System.nanoTime() - startTime);
+        }
+    }
+
+    private boolean tryMove(String start, String end, String promotion) {
+        if (status != GameStatus.ACTIVE) {
+            return reject("The game is over");
+        }
         int[] startCoords = parseCoordinates(start);
         int[] endCoords = parseCoordinates(end);
 
@@ -41,40 +150,56 @@ class ChessGameFacade {
         if(!(startCoords[0] >= 0 & startCoords[0] < 8 & startCoords[1] >= 0 & startCoords[1] < 8) |
                 !(endCoords[0] >= 0 & endCoords[0] < 8 & endCoords[1] >= 0 & endCoords[1] < 8)
         ){
-            return false;
+            return reject("That square is not on the board");
         }
 
         Piece piece = board.getPiece(startCoords[0], startCoords[1]);
         if (piece == null || !piece.getColor().equals(currentPlayer)) {
-            return false; // Invalid move
+            return reject("There is no " + currentPlayer + " piece on " + start); // Invalid move
         }
 
-        if (!piece.canMove(startCoords[0], startCoords[1], endCoords[0], endCoords[1], board)) {
-            return false; // Invalid move
+        int move = board.moveFor(Position.square(startCoords[0], startCoords[1]), Position.square(endCoords[0], endCoords[1]), Position.PAWN);
+        if (legalMovesKnown) {
+            // The legal moves were asked for already, so checking this one is a single lookup
+            if ((legalTargets[Move.from(move)] & (1L << Move.to(move))) == 0) {
+                boolean reachable = piece.canMove(startCoords[0], startCoords[1], endCoords[0], endCoords[1], board);
+                return reject(reachable ? "Your king is in check" : "That piece can't move there");
+            }
+        } else {
+            if (!piece.canMove(startCoords[0], startCoords[1], endCoords[0], endCoords[1], board)) {
+                return reject("That piece can't move there"); // Invalid move
+            }
+            if (board.leavesKingInCheck(move, piece.getColorIndex())) {
+                return reject("Your king is in check");
+            }
         }
 
-        Piece captured = board.getPiece(endCoords[0], endCoords[1]);
-        board.setPiece(endCoords[0], endCoords[1], piece);
-        board.setPiece(startCoords[0], startCoords[1], null);
-
-        if (board.isKingInCheck(currentPlayer)) {
-            // Undo the move
-            board.setPiece(startCoords[0], startCoords[1], piece);
-            board.setPiece(endCoords[0], endCoords[1], captured);
-            System.out.println("Your king is in check");
-            return false;
-        }
-
-        if (piece instanceof Pawn) {
-            handlePawnPromotion(endCoords[0], endCoords[1], piece);
+        if (piece instanceof Pawn && endCoords[0] == (currentPlayer.equals("white") ? 0 : 7)) {
+            if (promotion == null) return reject("Name the piece the pawn becomes (queen, rook, bishop or knight)");
+            int type = Arrays.asList(PIECE_NAMES).indexOf(promotion.toLowerCase());
+            if (type < 0) return reject("There is no piece called " + promotion);
+            if (type == Position.PAWN || type == Position.KING) return reject("A pawn can't become that piece");
+            move = Move.create(Move.from(move), Move.to(move), type);
         }
+        boolean irreversible = piece instanceof Pawn || board.getPiece(endCoords[0], endCoords[1]) != null;
+        board.playMove(move);
+        forgetLegalMoves();
+        halfmoveClock = irreversible ? 0 : halfmoveClock + 1;
+        if (currentPlayer.equals("black")) fullmoveNumber++;
 
         // Check for game-ending conditions
-        if (board.isCheckmate(currentPlayer.equals("white") ? "black" : "white")) {
-            System.out.println("Checkmate! " + currentPlayer + " wins!");
+        // The opponent's moves are generated once and decide both checkmate and stalemate
+        String opponent = currentPlayer.equals("white") ? "black" : "white";
+        long hash = board.getHash(opponent);
+        line = new GameSnapshot.Line(move, hash, irreversible, line);
+        lastError = null;
+        if (!board.hasLegalMove(opponent)) {
+            // The current player stays the one who made the last move
+            status = board.isKingInCheck(opponent) ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
             return true;
-        } else if (board.isStalemate(currentPlayer.equals("white") ? "black" : "white")) {
-            System.out.println("Stalemate! It's a draw.");
+        }
+        if (recordPosition(hash, irreversible) >= 3) {
+            status = GameStatus.REPETITION;
             return true;
         }
 
@@ -82,13 +207,116 @@ class ChessGameFacade {
         return true;
     }
 
-    private void handlePawnPromotion(int x, int y, Piece pawn) {
-        if ((currentPlayer.equals("white") && x == 0) || (currentPlayer.equals("black") && x == 7)) {
-            Scanner scanner = new Scanner(System.in);
-            System.out.println("Pawn promotion! Enter new piece (queen/rook/knight/bishop): ");
-            String newPiece = scanner.next();
-            board.setPiece(x, y, PieceFactory.createPiece(newPiece, currentPlayer));
+    // All legal moves of the player to move, as text like "E2 to E4" (with the new piece after
+    // a promotion, e.g. "E7 to E8 queen"); empty once the game is over
+    public List<String> getLegalMoves() {
+        if (legalMoveNames == null) {
+            findLegalMoves();
+            List<String> names = new ArrayList<>(legalMoves.size());
+            for (int i = 0; i < legalMoves.size(); i++) {
+                int move = legalMoves.get(i);
+                String name = Move.squareName(Move.from(move)) + " to " + Move.squareName(Move.to(move));
+                if (Move.promotion(move) != Position.PAWN) {
+                    name += " " + PIECE_NAMES[Move.promotion(move)];
+                }
+                names.add(name);
+            }
+            legalMoveNames = Collections.unmodifiableList(names);
         }
+        return legalMoveNames;
+    }
+
+    // The squares (like "E4") the piece on the given square can legally move to; empty if the square
+    // is empty, holds a piece of the player not to move, or the game is over
+    public List<String> getLegalTargets(String square) {
+        int from = squareIndex(square);
+        if (from < 0) return Collections.emptyList();
+        findLegalMoves();
+        List<String> targets = new ArrayList<>(Long.bitCount(legalTargets[from]));
+        for (long bits = legalTargets[from]; bits != 0; bits &= bits - 1) {
+            targets.add(Move.squareName(Long.numberOfTrailingZeros(bits)));
+        }
+        return targets;
+    }
+
+    // Whether moving from start to end is legal for the player to move, without making the move
+    public boolean isLegalMove(String start, String end) {
+        int from = squareIndex(start);
+        int to = squareIndex(end);
+        if (from < 0 || to < 0) return false;
+        findLegalMoves();
+        return (legalTargets[from] & (1L << to)) != 0;
+    }
+
+    // The same legal moves as packed Move ints, for callers that pick moves in code (like SelfPlay)
+    // and don't need the text; only valid until the next move
+    MoveList getLegalMoveList() {
+        findLegalMoves();
+        return legalMoves;
+    }
+
+    // Works the legal moves out, unless they are already known for this position
+    private void findLegalMoves() {
+        if (legalMovesKnown) return;
+        Arrays.fill(legalTargets, 0);
+        if (status == GameStatus.ACTIVE) {
+            MoveGenerator.generateLegal(board, Position.colorIndex(currentPlayer), legalMoves);
+        } else {
+            legalMoves.clear();
+        }
+        for (int i = 0; i < legalMoves.size(); i++) {
+            int move = legalMoves.get(i);
+            legalTargets[Move.from(move)] |= 1L << Move.to(move);
+        }
+        legalMovesKnown = true;
+    }
+
+    private void forgetLegalMoves() {
+        legalMovesKnown = false;
+        legalMoveNames = null;
+    }
+
+    // The square index of a name like "E2", or -1 if it is not a square on the board
+    private static int squareIndex(String square) {
+        if (square == null || square.length() != 2) return -1;
+        char file = Character.toUpperCase(square.charAt(0));
+        char rank = square.charAt(1);
+        if (file < 'A' || file > 'H' || rank < '1' || rank > '8') return -1;
+        return Position.square('8' - rank, file - 'A');
+    }
+
+    // Remembers why a move was rejected
+    private boolean reject(String reason) {
+        if (Metrics.isEnabled()) Metrics.REJECTED_MOVES.increment();
+        lastError = reason;
+        return false;
+    }
+
+    // Checks if moving from start to end is a pawn of the current player reaching the last row,
+    // i.e. a move that needs to say which piece the pawn becomes
+    public boolean isPromotion(String start, String end) {
+        int[] startCoords = parseCoordinates(start);
+        int[] endCoords = parseCoordinates(end);
+        if (startCoords[0] < 0 || startCoords[0] > 7 || startCoords[1] < 0 || startCoords[1] > 7) return false;
+        Piece piece = board.getPiece(startCoords[0], startCoords[1]);
+        return piece instanceof Pawn && piece.getColor().equals(currentPlayer)
+                && endCoords[0] == (currentPlayer.equals("white") ? 0 : 7);
+    }
+
+    // Adds a position to the history and returns how many times it has occurred
+    private int recordPosition(long hash, boolean irreversible) {
+        if (irreversible) {
+            historySize = 0; // Positions before a capture or pawn move can't repeat
+        }
+        if (historySize == positionHistory.length) {
+            positionHistory = Arrays.copyOf(positionHistory, historySize * 2);
+        }
+        positionHistory[historySize++] = hash;
+        int count = 0;
+        for (int i = 0; i < historySize; i++) {
+            if (positionHistory[i] == hash) count++;
+        }
+        return count;
     }
 
     private void switchPlayer() {
@@ -101,11 +329,50 @@ class ChessGameFacade {
         return new int[]{row, col};
     }
 
+    // Adds an observer to this game's board, e.g. to record its moves
+    public void addObserver(GameObserver observer) {
+        board.addObserver(observer);
+    }
+
     public void displayBoard() {
         board.display();
     }
 
+    // The board drawn as text, the same way displayBoard() prints it
+    public String getBoardText() {
+        return board.toString();
+    }
+
+    // An independent copy of the board, e.g. for the search engine to work on
+    public Board getBoardCopy() {
+        return board.copy();
+    }
+
+    // The current position as FEN text
+    public String getFen() {
+        return Fen.write(board, currentPlayer, halfmoveClock, fullmoveNumber);
+    }
+
     public String getCurrentPlayer() {
         return currentPlayer;
     }
+
+    // Moves since the last capture or pawn move, counting each side's move (100 allows a fifty-move draw claim)
+    // Moves played since the game began (counting those before a snapshot it was made from)
+    public int getPly() {
+        return line == null ? 0 : line.length;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    // Why the last move was rejected, or null if it was played
+    public String getLastError() {
+        return lastError;
+    }
 }
@@ -0,0 +1,256 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Hosts many games over TCP on localhost. Every connection plays its own game session,
+// handled on its own virtual thread (or a pooled platform thread on JVMs without virtual threads).
+//
+// The protocol is line based. The server answers every line with exactly one line:
+//   (on connect)      -> OK <game id> white
+//   E2 TO E4          -> OK <player to move> | ILLEGAL <reason> | CHECKMATE <winner> | STALEMATE | DRAW
+//   E7 TO E8 QUEEN    -> same as above; a pawn reaching the last row must name its new piece
+//   NEW               -> OK <game id> white   (gives up the game and starts a new one on the same connection)
+//   RESUME <game id>  -> OK <game id> <player to move> | ILLEGAL <reason>  (continues a game, e.g. after a restart)
+//   BOARD             -> BOARD <the 8 rows from the top, separated by '/', '.' for an empty square>
+//   MOVES             -> MOVES <every legal move of the player to move, e.g. "E2 TO E4", separated by ','>
+//   MOVES E2          -> MOVES <the squares the piece on E2 can legally go to, separated by ' '>
+//   QUIT              -> BYE                   (gives up the game and closes the connection)
+// A game ends when it is over, or with NEW or QUIT. A game whose client just disconnects (or switches
+// to another game with RESUME) is kept, so it can be resumed later, unless no move was played in it;
+// games nobody has played for --idle-minutes (default 30) are ended.
+// With a journal file every move is recorded, and games that hadn't ended when the server stopped
+// are brought back on the next start, to be continued with RESUME.
+// With --metrics the server records move latencies and rule-engine work (see Metrics), shows them
+// over JMX and prints them every given number of seconds.
+// Usage: java ChessServer [port] [journal file] [--metrics seconds] [--idle-minutes minutes]
+public class ChessServer {
+    static final long DEFAULT_IDLE_MINUTES = 30;
+
+    private final GameSessionRegistry registry;
+    private final int port;
+    private final long idleMinutes; // How long a game nobody plays is kept
+
+    public ChessServer(int port) {
+        this(port, new GameSessionRegistry());
+    }
+
+    public ChessServer(int port, GameSessionRegistry registry) {
+        this(port, registry, DEFAULT_IDLE_MINUTES);
+    }
+
+    public ChessServer(int port, GameSessionRegistry registry, long idleMinutes) {
+        if (idleMinutes < 1) throw new IllegalArgumentException("--idle-minutes must be at least 1: " + idleMinutes);
+        this.port = port;
+        this.registry = registry;
+        this.idleMinutes = idleMinutes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int metricsSeconds = 0;
+        long idleMinutes = DEFAULT_IDLE_MINUTES;
+        List<String> positional = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsSeconds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--idle-minutes") && i + 1 < args.length) {
+                idleMinutes = Long.parseLong(args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        args = positional.toArray(new String[0]);
+        Metrics.register(); // Can be switched on over JMX later
+        if (metricsSeconds > 0) {
+            Metrics.setEnabled(true);
+            Metrics.startDump(System.out, metricsSeconds);
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5555;
+        if (args.length < 2) {
+            new ChessServer(port, new GameSessionRegistry(), idleMinutes).run();
+            return;
+        }
+        Path journalFile = Paths.get(args[1]);
+        Map<Long, ChessGameFacade> games = MoveJournal.recover(journalFile);
+        try (MoveJournal journal = new MoveJournal(journalFile, MoveJournal.FsyncPolicy.PERIODIC, 100)) {
+            GameSessionRegistry registry = new GameSessionRegistry(journal);
+            registry.restore(games);
+            System.out.println("Recovered " + games.size() + " games from " + journalFile);
+            new ChessServer(port, registry, idleMinutes).run();
+        }
+    }
+
+    // Accepts connections until the process is stopped
+    public void run() throws IOException {
+        ExecutorService executor = newThreadPerTaskExecutor();
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "idle-games");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                registry.endIdle(idleNanos);
+            } catch (RuntimeException e) {
+                System.err.println("Ending idle games failed: " + e.getMessage()); // Try again next time
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+        try (ServerSocket server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress())) {
+            System.out.println("Chess server listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                executor.execute(() -> handle(socket));
+            }
+        }
+    }
+
+    // Plays one connection's games until it quits or disconnects
+    private void handle(Socket socket) {
+        GameSession session = registry.create();
+        session.attach();
+        try (Socket connection = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.US_ASCII))) {
+            connection.setTcpNoDelay(true);
+            reply(out, "OK " + session.getId() + " white");
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.trim().toUpperCase();
+                if (command.equals("QUIT")) {
+                    registry.remove(session.getId());
+                    reply(out, "BYE");
+                    break;
+                } else if (command.equals("NEW")) {
+                    registry.remove(session.getId());
+                    session = registry.create();
+                    session.attach();
+                    reply(out, "OK " + session.getId() + " white");
+                } else if (command.startsWith("RESUME ")) {
+                    GameSession resumed = resume(command.substring(7).trim());
+                    if (resumed == null || resumed != session && !resumed.attach()) {
+                        reply(out, "ILLEGAL There is no game with that id");
+                    } else {
+                        if (resumed != session) leave(session);
+                        session = resumed;
+                        reply(out, "OK " + session.getId() + " " + session.getCurrentPlayer());
+                    }
+                } else if (command.equals("BOARD")) {
+                    reply(out, "BOARD " + session.withGame(ChessServer::boardRows));
+                } else if (command.equals("MOVES")) {
+                    reply(out, ("MOVES " + session.withGame(game -> String.join(",", game.getLegalMoves()))).toUpperCase());
+                } else if (command.startsWith("MOVES ")) {
+                    String square = command.substring(6).trim();
+                    reply(out, "MOVES " + session.withGame(game -> String.join(" ", game.getLegalTargets(square))));
+                } else {
+                    String result = play(session, command);
+                    if (session.withGame(ChessGameFacade::getStatus) != GameStatus.ACTIVE) {
+                        registry.remove(session.getId()); // Over, so the journal needn't recover it
+                    }
+                    reply(out, result);
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; nothing to answer anymore
+        } finally {
+            leave(session);
+        }
+    }
+
+    // The connection stops playing a game without ending it. A game with moves stays registered (and open
+    // in the journal), so it can be resumed, also after a restart, until it has been idle too long;
+    // one without moves isn't worth keeping.
+    private void leave(GameSession session) {
+        session.detach();
+        if (session.withGame(ChessGameFacade::getPly) == 0) {
+            registry.remove(session.getId());
+        }
+    }
+
+    // The session with the given id, or null if there is none
+    private GameSession resume(String id) {
+        try {
+            return registry.get(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Applies a move line like "E2 TO E4" or "E7 TO E8 QUEEN" and describes the outcome
+    private static String play(GameSession session, String command) {
+        String[] parts = command.split(" TO ");
+        if (parts.length != 2 || parts[0].length() != 2) {
+            return "ILLEGAL Use 'start to end' format (e.g., A2 to A3)";
+        }
+        String[] end = parts[1].split(" ");
+        if (end[0].length() != 2) {
+            return "ILLEGAL Use 'start to end' format (e.g., A2 to A3)";
+        }
+        String promotion = end.length > 1 ? end[end.length - 1] : null;
+
+        return session.withGame(game -> {
+            // Promotion has to come with the move, the server never asks for it
+            if (promotion == null && game.isPromotion(parts[0], end[0])) {
+                return "ILLEGAL Name the piece the pawn becomes (e.g., E7 to E8 queen)";
+            }
+            boolean moved;
+            try {
+                moved = game.makeMove(parts[0], end[0], promotion);
+            } catch (IllegalArgumentException e) {
+                return "ILLEGAL " + e.getMessage();
+            }
+            if (!moved) {
+                return "ILLEGAL " + game.getLastError();
+            }
+            switch (game.getStatus()) {
+                case CHECKMATE: return "CHECKMATE " + game.getCurrentPlayer();
+                case STALEMATE: return "STALEMATE";
+                case REPETITION: return "DRAW";
+                default: return "OK " + game.getCurrentPlayer();
+            }
+        });
+    }
+
+    // The board as a single line, rows from the top separated by '/'
+    private static String boardRows(ChessGameFacade game) {
+        String[] lines = game.getBoardText().split("\n");
+        StringBuilder rows = new StringBuilder();
+        for (int i = 1; i <= 8; i++) {
+            if (i > 1) rows.append('/');
+            rows.append(lines[i].substring(2, 17).replace(" ", ""));
+        }
+        return rows.toString();
+    }
+
+    private static void reply(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+
+    // An executor that starts a virtual thread per task when the JVM has them (Java 21+),
+    // and otherwise falls back to a cached pool of platform threads
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Random;
+
+// A player that picks its moves with the search engine, within a fixed time per move.
+// With an opening book it plays a book move whenever the position is in the book and only searches after that.
+class ComputerPlayer implements Player {
+    private final ParallelSearch search;
+    private final long timeMillis;
+    private final OpeningBook book; // Or null
+    private final Random random = new Random();
+    private final MoveList legalMoves = new MoveList();
+
+    public ComputerPlayer(long timeMillis) {
+        this(timeMillis, 1);
+    }
+
+    // Searches with the given number of threads
+    public ComputerPlayer(long timeMillis, int threads) {
+        this(timeMillis, threads, null);
+    }
+
+    // Checks the opening book before searching
+    public ComputerPlayer(long timeMillis, int threads, OpeningBook book) {
+        this.search = new ParallelSearch(threads);
+        this.timeMillis = timeMillis;
+        this.book = book;
+    }
+
+    @Override
+    public String nextMove(ChessGameFacade game) {
+        // The engine works on its own copy, so the game board is never touched while searching
+        Board board = game.getBoardCopy();
+        int color = Position.colorIndex(game.getCurrentPlayer());
+
+        int bookMove = bookMove(board, color);
+        if (bookMove != 0) {
+            String text = Move.toString(bookMove);
+            System.out.println("Computer plays " + text + " (book)");
+            return text;
+        }
+
+        int move = search.search(board, color, timeMillis, SearchEngine.MAX_PLY);
+        String text = Move.toString(move);
+        System.out.println("Computer plays " + text + " (depth " + search.getDepthReached()
+                + ", score " + search.getBestScore() + ", " + search.getNodes() + " nodes, "
+                + search.getNodesPerSecond() + " nodes/s)");
+        return text;
+    }
+
+    // A move from the book for the position, or 0. Book moves are checked against the legal moves,
+    // since a different position may share the hash.
+    private int bookMove(Board board, int color) {
+        if (book == null) return 0;
+        int move = book.pickMove(Zobrist.withSideToMove(board.getPosition().hash(), color), random);
+        if (move == 0) return 0;
+        MoveGenerator.generateLegal(board, color, legalMoves);
+        for (int i = 0; i < legalMoves.size(); i++) {
+            if (legalMoves.get(i) == move) return move;
+        }
+        return 0;
+    }
+}
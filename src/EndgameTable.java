@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The value of every position of one endgame (a fixed set of pieces, like king and queen against king),
+// with either side to move. One byte per position:
+//   0      draw (or not decided yet while the table is being generated)
+//   n      decided in n - 1 plies: odd n means the side to move gets mated (1 = it is checkmated now),
+//          even n means the side to move mates (2 = mate in one)
+//   255    not a legal position (pieces on the same square, a pawn on the first or last row,
+//          or the side that just moved left its king in check)
+// A position is found by its index: the side to move, then the square of every piece in slot order
+// (white king, black king, white's other pieces, black's other pieces), six bits each.
+// The signature names the pieces, white's first: "KQK" is white king and queen against the black king.
+// Tables are kept with the stronger side as white; Tablebase mirrors positions where black is stronger.
+class EndgameTable {
+    static final int DRAW = 0;
+    static final int INVALID = 255;
+    static final int MAX_PIECES = 4; // 2 * 64^4 positions still fit in one array (and one mapped file)
+    static final long MAGIC = 0x43484553_53544231L; // "CHESSTB1"
+    static final int HEADER_SIZE = 16;
+
+    private static final String LETTERS = "PNBRQK"; // Indexed by Position's piece types
+    private static final int[] VALUES = {1, 3, 3, 5, 9, 0};
+
+    private final String signature;
+    private final int[] colors; // Color of the piece in each slot
+    private final int[] types; // Type of the piece in each slot
+    private final ByteBuffer values;
+
+    // A table holding the given values, which must have size(pieces) bytes
+    EndgameTable(String signature, ByteBuffer values) {
+        this.signature = signature;
+        int pieces = signature.length();
+        if (pieces < 2 || pieces > MAX_PIECES || signature.charAt(0) != 'K' || signature.indexOf('K', 1) < 0) {
+            throw new IllegalArgumentException("Invalid endgame signature (need two kings and at most "
+                    + MAX_PIECES + " pieces): " + signature);
+        }
+        int blackKing = signature.indexOf('K', 1);
+        colors = new int[pieces];
+        types = new int[pieces];
+        colors[1] = Position.BLACK;
+        types[0] = Position.KING;
+        types[1] = Position.KING;
+        int slot = 2;
+        for (int i = 1; i < pieces; i++) {
+            if (i == blackKing) continue;
+            int type = LETTERS.indexOf(signature.charAt(i));
+            if (type < 0 || type == Position.KING) {
+                throw new IllegalArgumentException("Invalid endgame signature (unknown piece '"
+                        + signature.charAt(i) + "'): " + signature);
+            }
+            colors[slot] = i < blackKing ? Position.WHITE : Position.BLACK;
+            types[slot] = type;
+            slot++;
+        }
+        if (values.capacity() != size(pieces)) {
+            throw new IllegalArgumentException(signature + " needs " + size(pieces) + " values, not " + values.capacity());
+        }
+        this.values = values;
+    }
+
+    // Number of positions in a table with that many pieces
+    static int size(int pieces) {
+        return 2 << (6 * pieces);
+    }
+
+    // The signature with each side's pieces in a fixed order (strongest first) and the stronger side as white,
+    // e.g. "KRKQ" becomes "KQKR". Tables are stored under this name.
+    static String canonical(String signature) {
+        int blackKing = signature.indexOf('K', 1);
+        if (signature.isEmpty() || signature.charAt(0) != 'K' || blackKing < 0) {
+            throw new IllegalArgumentException("Invalid endgame signature (need two kings): " + signature);
+        }
+        String white = sortPieces(signature.substring(1, blackKing));
+        String black = sortPieces(signature.substring(blackKing + 1));
+        int compare = Integer.compare(material(white), material(black));
+        if (compare == 0) compare = white.compareTo(black);
+        return compare >= 0 ? "K" + white + "K" + black : "K" + black + "K" + white;
+    }
+
+    private static String sortPieces(String pieces) {
+        StringBuilder sorted = new StringBuilder(pieces.length());
+        for (int type = Position.QUEEN; type >= Position.PAWN; type--) {
+            for (int i = 0; i < pieces.length(); i++) {
+                if (pieces.charAt(i) == LETTERS.charAt(type)) sorted.append(LETTERS.charAt(type));
+            }
+        }
+        if (sorted.length() != pieces.length()) {
+            throw new IllegalArgumentException("Invalid endgame signature (unknown piece): " + pieces);
+        }
+        return sorted.toString();
+    }
+
+    private static int material(String pieces) {
+        int total = 0;
+        for (int i = 0; i < pieces.length(); i++) {
+            total += VALUES[LETTERS.indexOf(pieces.charAt(i))];
+        }
+        return total;
+    }
+
+    // The letter used in signatures for a piece type
+    static char letter(int type) {
+        return LETTERS.charAt(type);
+    }
+
+    String getSignature() {
+        return signature;
+    }
+
+    int getPieces() {
+        return types.length;
+    }
+
+    int size() {
+        return values.capacity();
+    }
+
+    int color(int slot) {
+        return colors[slot];
+    }
+
+    int type(int slot) {
+        return types[slot];
+    }
+
+    int value(int index) {
+        return values.get(index) & 0xff;
+    }
+
+    // Index of the position with the pieces on the given squares (in slot order)
+    int index(int sideToMove, int[] squares) {
+        int index = sideToMove;
+        for (int slot = 0; slot < types.length; slot++) {
+            index = index << 6 | squares[slot];
+        }
+        return index;
+    }
+
+    // Fills squares with the square of every slot and returns the side to move
+    static int decode(int index, int[] squares, int pieces) {
+        for (int slot = pieces - 1; slot >= 0; slot--) {
+            squares[slot] = index & 63;
+            index >>>= 6;
+        }
+        return index;
+    }
+
+    // Reads a table written by write(); the file is memory-mapped, so nothing is loaded up front
+    static EndgameTable open(Path file, String signature) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long expected = HEADER_SIZE + (long) size(signature.length());
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+            if (channel.size() != expected || header.getLong(0) != MAGIC || header.getInt(8) != signature.length()) {
+                throw new IOException(file + " is not a " + signature + " endgame table");
+            }
+            // The mapping stays valid after the channel is closed
+            return new EndgameTable(signature, channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, expected - HEADER_SIZE));
+        }
+    }
+
+    void write(Path file) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(MAGIC).putInt(types.length).putInt(0);
+            header.flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            ByteBuffer data = values.duplicate().clear();
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        }
+    }
+}
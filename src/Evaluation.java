@@ -0,0 +1,48 @@
+// Scores a position for the search engine, in centipawns from the point of view of the given color.
+// Material plus small bonuses for centralized pieces and advanced pawns.
+class Evaluation {
+    // Values of PAWN, KNIGHT, BISHOP, ROOK, QUEEN and KING, indexed by piece type
+    static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+
+    // Bonus for standing close to the center, indexed by square (same for both colors since the table is symmetric)
+    private static final int[] CENTER_BONUS = new int[64];
+    // Bonus for a white pawn on each row; black uses the mirrored row
+    private static final int[] PAWN_ROW_BONUS = {0, 50, 30, 20, 10, 5, 0, 0};
+
+    static {
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                int distance = Math.max(Math.abs(2 * x - 7), Math.abs(2 * y - 7)); // 1 in the center, 7 on the edge
+                CENTER_BONUS[x * 8 + y] = (7 - distance) * 3;
+            }
+        }
+    }
+
+    static int evaluate(Board board, int color) {
+        Position position = board.getPosition();
+        int score = material(position, Position.WHITE) - material(position, Position.BLACK);
+        return color == Position.WHITE ? score : -score;
+    }
+
+    // Material and placement of one side
+    private static int material(Position position, int color) {
+        int score = 0;
+        for (int type = Position.PAWN; type <= Position.QUEEN; type++) {
+            long pieces = position.pieces(color, type);
+            score += Long.bitCount(pieces) * PIECE_VALUES[type];
+            if (type == Position.PAWN) {
+                while (pieces != 0) {
+                    int x = Long.numberOfTrailingZeros(pieces) >>> 3;
+                    score += PAWN_ROW_BONUS[color == Position.WHITE ? x : 7 - x];
+                    pieces &= pieces - 1;
+                }
+            } else if (type != Position.ROOK) {
+                while (pieces != 0) {
+                    score += CENTER_BONUS[Long.numberOfTrailingZeros(pieces)];
+                    pieces &= pieces - 1;
+                }
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,217 @@
+// Reads and writes positions in Forsyth-Edwards Notation (FEN), e.g. the start position:
+//   rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1
+// The six fields are the pieces (rows from the top, digits for empty squares), the side to move,
+// the castling rights, the en passant square and the halfmove and fullmove counters.
+//
+// Castling rights are kept by the board's Position; the moved flags of the kings and rooks are set
+// to match (a king or rook that may still castle has not moved, every other king and rook has).
+// An en passant square is only kept when a pawn can actually capture there, as after a move.
+//
+// Loading is meant for bulk use (analysis files, puzzles, benchmarks): reuse one Fen and one Board
+// for many positions. The text is read in place and knights, bishops and queens are shared
+// instances since they carry no state, so a load only allocates the pawns, rooks and kings.
+class Fen {
+    static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String PIECE_LETTERS = "pnbrqk"; // Indexed by piece type
+    private static final Piece[][] SHARED = new Piece[2][6]; // Stateless pieces, per color and type
+
+    static {
+        for (int type : new int[]{Position.KNIGHT, Position.BISHOP, Position.QUEEN}) {
+            SHARED[Position.WHITE][type] = PieceFactory.createPiece(type, "white");
+            SHARED[Position.BLACK][type] = PieceFactory.createPiece(type, "black");
+        }
+    }
+
+    // What the last load read besides the pieces
+    private String sideToMove = "white";
+    private int halfmoveClock;
+    private int fullmoveNumber = 1;
+
+    // Replaces everything on the board with the position described by the FEN text.
+    // The counters may be left out, as many FEN files do.
+    public void load(CharSequence fen, Board board) {
+        board.clear();
+        int length = fen.length();
+        int i = 0;
+
+        // Pieces
+        int x = 0;
+        int y = 0;
+        for (; i < length && fen.charAt(i) != ' '; i++) {
+            char c = fen.charAt(i);
+            if (c == '/') {
+                if (y != 8) throw invalid(fen, "row " + (8 - x) + " doesn't have 8 squares");
+                x++;
+                y = 0;
+            } else if (c >= '1' && c <= '8') {
+                y += c - '0';
+            } else {
+                int type = PIECE_LETTERS.indexOf(Character.toLowerCase(c));
+                if (type < 0) throw invalid(fen, "unknown piece '" + c + "'");
+                if (x > 7 || y > 7) throw invalid(fen, "too many squares");
+                int color = Character.isUpperCase(c) ? Position.WHITE : Position.BLACK;
+                board.setPiece(x, y++, piece(color, type));
+            }
+        }
+        if (x != 7 || y != 8) throw invalid(fen, "the board doesn't have 8 rows of 8 squares");
+
+        // Side to move
+        i = skipSpaces(fen, i);
+        if (i >= length) throw invalid(fen, "the side to move is missing");
+        char side = fen.charAt(i++);
+        if (side != 'w' && side != 'b') throw invalid(fen, "the side to move must be 'w' or 'b'");
+        sideToMove = side == 'w' ? "white" : "black";
+
+        // Castling rights, turned into the moved flags of the kings and rooks, which the rights follow
+        i = skipSpaces(fen, i);
+        int rights = 0; // Bits 0-3: white king side, white queen side, black king side, black queen side
+        for (; i < length && fen.charAt(i) != ' '; i++) {
+            int right = "KQkq-".indexOf(fen.charAt(i));
+            if (right < 0) throw invalid(fen, "unknown castling right '" + fen.charAt(i) + "'");
+            if (right < 4) rights |= 1 << right;
+        }
+        setMovedFlags(board, rights);
+        board.refreshCastlingRights(); // A right without its king and rook in place is dropped
+
+        // En passant square
+        i = skipSpaces(fen, i);
+        if (i < length && fen.charAt(i) != '-') {
+            if (i + 1 >= length) throw invalid(fen, "incomplete en passant square");
+            int col = fen.charAt(i) - 'a';
+            int row = 8 - (fen.charAt(i + 1) - '0');
+            if (col < 0 || col > 7 || row < 0 || row > 7) throw invalid(fen, "bad en passant square");
+            board.setEnPassant(side == 'w' ? Position.WHITE : Position.BLACK, Position.square(row, col));
+            i += 2;
+        } else {
+            i++;
+        }
+
+        // Counters
+        i = skipSpaces(fen, i);
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        if (i < length) {
+            int end = numberEnd(fen, i);
+            halfmoveClock = parseNumber(fen, i, end);
+            i = skipSpaces(fen, end);
+            if (i < length) {
+                fullmoveNumber = parseNumber(fen, i, numberEnd(fen, i));
+            }
+        }
+    }
+
+    // The side to move of the last loaded position ("white" or "black")
+    public String getSideToMove() {
+        return sideToMove;
+    }
+
+    // Halfmoves since the last capture or pawn move, as given by the last loaded position
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    // Number of the full move, starting at 1 and increased after every black move
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // Describes the position on the board as FEN text.
+    public static String write(Board board, String sideToMove, int halfmoveClock, int fullmoveNumber) {
+        StringBuilder out = new StringBuilder(90);
+        write(board, sideToMove, halfmoveClock, fullmoveNumber, out);
+        return out.toString();
+    }
+
+    // Same as above, appending to the given builder so it can be reused.
+    public static void write(Board board, String sideToMove, int halfmoveClock, int fullmoveNumber, StringBuilder out) {
+        for (int x = 0; x < 8; x++) {
+            if (x > 0) out.append('/');
+            int empty = 0;
+            for (int y = 0; y < 8; y++) {
+                Piece piece = board.getPiece(x, y);
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) out.append((char) ('0' + empty));
+                empty = 0;
+                out.append(piece.getSymbol());
+            }
+            if (empty > 0) out.append((char) ('0' + empty));
+        }
+
+        out.append(' ').append(Position.colorIndex(sideToMove) == Position.WHITE ? 'w' : 'b').append(' ');
+        int rights = board.getPosition().getCastlingRights();
+        if ((rights & Position.WHITE_KING_SIDE) != 0) out.append('K');
+        if ((rights & Position.WHITE_QUEEN_SIDE) != 0) out.append('Q');
+        if ((rights & Position.BLACK_KING_SIDE) != 0) out.append('k');
+        if ((rights & Position.BLACK_QUEEN_SIDE) != 0) out.append('q');
+        if (rights == 0) out.append('-');
+
+        out.append(' ');
+        int ep = board.getPosition().getEpSquare();
+        if (ep < 0) {
+            out.append('-');
+        } else {
+            out.append((char) ('a' + (ep & 7))).append((char) ('0' + 8 - (ep >>> 3)));
+        }
+        out.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+    }
+
+    // A piece for the board: a shared one for stateless types, a new one for types that track moves
+    private static Piece piece(int color, int type) {
+        Piece shared = SHARED[color][type];
+        return shared != null ? shared : PieceFactory.createPiece(type, color == Position.WHITE ? "white" : "black");
+    }
+
+    // Marks every pawn off its start row, and every king and rook that may not castle anymore, as moved
+    private static void setMovedFlags(Board board, int rights) {
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board.getPiece(square >>> 3, square & 7);
+            if (piece == null) continue;
+            int x = square >>> 3;
+            int y = square & 7;
+            int homeRow = piece.getColorIndex() == Position.WHITE ? 7 : 0;
+            int colorRights = rights >>> (piece.getColorIndex() * 2) & 3; // Bit 0: king side, bit 1: queen side
+            switch (piece.getType()) {
+                case Position.PAWN:
+                    piece.setMoved(x != (piece.getColorIndex() == Position.WHITE ? 6 : 1));
+                    break;
+                case Position.KING:
+                    piece.setMoved(x != homeRow || y != 4 || colorRights == 0);
+                    break;
+                case Position.ROOK:
+                    boolean mayCastle = x == homeRow && (y == 7 && (colorRights & 1) != 0 || y == 0 && (colorRights & 2) != 0);
+                    piece.setMoved(!mayCastle);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static int skipSpaces(CharSequence fen, int i) {
+        while (i < fen.length() && fen.charAt(i) == ' ') i++;
+        return i;
+    }
+
+    private static int numberEnd(CharSequence fen, int i) {
+        while (i < fen.length() && fen.charAt(i) != ' ') i++;
+        return i;
+    }
+
+    private static int parseNumber(CharSequence fen, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = fen.charAt(i);
+            if (c < '0' || c > '9' || i - start > 6) throw invalid(fen, "bad move counter");
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException invalid(CharSequence fen, String reason) {
+        return new IllegalArgumentException("Invalid FEN (" + reason + "): " + fen);
+    }
+}
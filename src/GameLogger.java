@@ -1,10 +1,39 @@
+import java.io.PrintStream;
+
 // A class that logs the state of the game whenever the board changes.
 // Implements the GameObserver interface to receive updates.
 public class GameLogger implements GameObserver {
+    private final PrintStream out;
+
+    public GameLogger() {
+        this(System.out);
+    }
+
+    public GameLogger(PrintStream out) {
+        this.out = out;
+    }
+
     @Override
     public void update(Board board) {
         // This method is called whenever the board changes.
         // Prints the updated state of the board to the console.
-        System.out.println("Board updated: \n" + board);
+        out.println("Board updated: \n" + board);
+    }
+
+    @Override
+    public void moveMade(MoveEvent event) {
+        out.println("Board updated: \n" + event);
+    }
+
+    // Writes a whole batch of updates with a single print
+    @Override
+    public void movesMade(MoveEvent[] events, int count) {
+        StringBuilder text = new StringBuilder(count * 220);
+        for (int i = 0; i < count; i++) {
+            text.append("Board updated: \n");
+            events[i].appendTo(text);
+            text.append('\n');
+        }
+        out.print(text);
     }
-}
\ No newline at end of file
+}
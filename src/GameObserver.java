@@ -2,4 +2,19 @@
 public interface GameObserver {
     // This method is called to notify the observer about changes to the board.
     void update(Board board);
-}
\ No newline at end of file
+
+    // Called instead of update when the observer is run by an AsyncObserverDispatcher,
+    // after the board may have changed again. By default it rebuilds the board from the event; that board
+    // has only the position, so observers that need the move itself (getLastMove) must override this.
+    default void moveMade(MoveEvent event) {
+        update(event.toBoard());
+    }
+
+    // Called by an AsyncObserverDispatcher with several events at once (oldest first),
+    // so an observer that writes somewhere can do it once per batch.
+    default void movesMade(MoveEvent[] events, int count) {
+        for (int i = 0; i < count; i++) {
+            moveMade(events[i]);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.function.Function;
+
+// One hosted game: a facade with its own board, plus an id to find it again.
+// A board isn't thread-safe, so every access to the game goes through this session's lock;
+// different sessions never share anything and can be played on different threads at the same time.
+class GameSession {
+    private final long id;
+    private final ChessGameFacade game;
+    private int connections; // Clients playing this game right now
+    private long idleSince = System.nanoTime(); // When the last client left (or the session was made)
+    private boolean ended; // Removed from the registry; can't be joined anymore
+
+    public GameSession(long id, ChessGameFacade game) {
+        this.id = id;
+        this.game = game;
+    }
+
+    // A client starts playing this game; false if the game has ended in the meantime
+    public synchronized boolean attach() {
+        if (ended) return false;
+        connections++;
+        return true;
+    }
+
+    // A client stops playing this game without ending it
+    public synchronized void detach() {
+        if (--connections == 0) idleSince = System.nanoTime();
+    }
+
+    // Marks the game ended if no client has played it since the given System.nanoTime(); true if it did
+    synchronized boolean endIfIdleSince(long cutoff) {
+        if (ended || connections > 0 || idleSince - cutoff > 0) return false;
+        ended = true;
+        return true;
+    }
+
+    synchronized void end() {
+        ended = true;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public synchronized boolean makeMove(String start, String end, String promotion) {
+        return game.makeMove(start, end, promotion);
+    }
+
+    public synchronized String getCurrentPlayer() {
+        return game.getCurrentPlayer();
+    }
+
+    // Runs any other operation on the game while holding the session's lock
+    public synchronized <T> T withGame(Function<ChessGameFacade, T> operation) {
+        return operation.apply(game);
+    }
+}
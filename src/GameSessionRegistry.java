@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Creates game sessions and finds them by id. Each session gets its own board,
+// so one JVM can host as many games as memory allows. Safe to use from many threads.
+class GameSessionRegistry {
+    private final Map<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final MoveJournal journal; // Records every game's moves, or null
+
+    public GameSessionRegistry() {
+        this(null);
+    }
+
+    // Records the start, moves and end of every game in the journal
+    public GameSessionRegistry(MoveJournal journal) {
+        this.journal = journal;
+    }
+
+    // Starts a new game and registers it
+    public GameSession create() {
+        long id = nextId.getAndIncrement();
+        ChessGameFacade game = new ChessGameFacade();
+        if (journal != null) {
+            try {
+                journal.gameStarted(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            game.addObserver(journal.observerFor(id));
+        }
+        GameSession session = new GameSession(id, game);
+        sessions.put(id, session);
+        return session;
+    }
+
+    // Registers games brought back by MoveJournal.recover under their old ids.
+    // Their earlier moves are in the journal already; new ones are added to it.
+    public void restore(Map<Long, ChessGameFacade> games) {
+        for (Map.Entry<Long, ChessGameFacade> entry : games.entrySet()) {
+            long id = entry.getKey();
+            if (journal != null) {
+                entry.getValue().addObserver(journal.observerFor(id));
+            }
+            sessions.put(id, new GameSession(id, entry.getValue()));
+            nextId.accumulateAndGet(id + 1, Math::max);
+        }
+    }
+
+    // Returns the session with the given id, or null if there is none
+    public GameSession get(long id) {
+        return sessions.get(id);
+    }
+
+    // Forgets a session whose game is over or was given up, and records its end in the journal
+    public GameSession remove(long id) {
+        GameSession session = sessions.remove(id);
+        if (session != null) session.end();
+        if (session != null && journal != null) {
+            try {
+                journal.gameEnded(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return session;
+    }
+
+    // Ends the games no client has played for the given time (e.g. ones whose client went away and
+    // never came back), so they don't stay in memory and in the journal's recovery forever.
+    // Returns how many were ended.
+    public int endIdle(long idleNanos) {
+        long cutoff = System.nanoTime() - idleNanos;
+        int count = 0;
+        for (GameSession session : sessions.values()) {
+            if (session.endIfIdleSince(cutoff)) {
+                remove(session.getId());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // A live view of all sessions
+    public Collection<GameSession> getSessions() {
+        return sessions.values();
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// An unchangeable picture of a game: the position, the player to move, the status and counters, and
+// every move that led there. Take one with ChessGameFacade.snapshot(); ChessGameFacade.fromSnapshot()
+// turns it back into a game of its own that can be played on, as many times as needed (to explore
+// variations, or to hand a game to an analysis thread while play goes on). Since a snapshot never
+// changes, any thread can read it without locking.
+//
+// The moves are a linked list from the newest move back to the first. Every snapshot of a game, and
+// every game made from one, shares the part of the list it has in common with the others, so neither
+// taking a snapshot nor forking a game copies its history; only the position (a dozen bitboards) is copied.
+final class GameSnapshot {
+    private static final String[] PIECE_NAMES = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+
+    // One move of a game's history, linked to the move before it
+    static final class Line {
+        final int move;
+        final long hash; // Board.getHash of the position after the move, for the player to move then
+        final boolean irreversible; // A capture or pawn move, so no earlier position can come back
+        final Line previous; // Or null for the game's first move
+        final int length; // Moves up to and including this one
+
+        Line(int move, long hash, boolean irreversible, Line previous) {
+            this.move = move;
+            this.hash = hash;
+            this.irreversible = irreversible;
+            this.previous = previous;
+            this.length = previous == null ? 1 : previous.length + 1;
+        }
+    }
+
+    private final long[] bitboards = new long[12]; // Per color * 6 + type; never changed after construction
+    private final int sideToMove;
+    private final int castlingRights;
+    private final int epSquare;
+    private final long hash;
+    private final GameStatus status;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+    private final GameSnapshot start; // The position the game began from (this snapshot if it is that one)
+    private final Line line; // The moves from start to here, newest first; null if there are none
+
+    // A snapshot of the position on the board; start is null if this is where the game begins
+    GameSnapshot(Board board, int sideToMove, GameStatus status, int halfmoveClock, int fullmoveNumber,
+                 GameSnapshot start, Line line) {
+        Position position = board.getPosition();
+        for (int color = Position.WHITE; color <= Position.BLACK; color++) {
+            for (int type = Position.PAWN; type <= Position.KING; type++) {
+                bitboards[color * 6 + type] = position.pieces(color, type);
+            }
+        }
+        this.sideToMove = sideToMove;
+        this.castlingRights = position.getCastlingRights();
+        this.epSquare = position.getEpSquare();
+        this.hash = Zobrist.withSideToMove(position.hash(), sideToMove);
+        this.status = status;
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+        this.start = start != null ? start : this;
+        this.line = line;
+    }
+
+    public String getCurrentPlayer() {
+        return sideToMove == Position.WHITE ? "white" : "black";
+    }
+
+    public GameStatus getStatus() {
+        return status;
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // Number of moves played since the game began
+    public int getPly() {
+        return line == null ? 0 : line.length;
+    }
+
+    // The same as Board.getHash of the position for the player to move
+    public long getHash() {
+        return hash;
+    }
+
+    // The snapshot of the position the game began from
+    public GameSnapshot getStart() {
+        return start;
+    }
+
+    // The moves since the game began, first move first, as text like "E2 to E4" (with the new piece
+    // after a promotion, e.g. "E7 to E8 queen")
+    public List<String> getMoves() {
+        int[] moves = moves(line);
+        List<String> names = new ArrayList<>(moves.length);
+        for (int move : moves) {
+            String name = Move.squareName(Move.from(move)) + " to " + Move.squareName(Move.to(move));
+            names.add(Move.promotion(move) == Position.PAWN ? name : name + " " + PIECE_NAMES[Move.promotion(move)]);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    public String getFen() {
+        return Fen.write(toBoard(), getCurrentPlayer(), halfmoveClock, fullmoveNumber);
+    }
+
+    // A new board with this position, e.g. for the search engine
+    public Board toBoard() {
+        Board board = new Board();
+        setUp(board);
+        return board;
+    }
+
+    // The snapshot of the same game the given number of moves earlier. Positions before this one aren't
+    // kept, so the game is played again from its start; the moves before that point are still shared.
+    public GameSnapshot takeBack(int plies) {
+        if (plies < 0 || plies > getPly()) {
+            throw new IllegalArgumentException("Can't take back " + plies + " of " + getPly() + " moves");
+        }
+        Line kept = line;
+        for (int i = 0; i < plies; i++) {
+            kept = kept.previous;
+        }
+        if (kept == null) return start;
+        ChessGameFacade game = ChessGameFacade.fromSnapshot(start);
+        for (int move : moves(kept)) {
+            int promotion = Move.promotion(move);
+            if (!game.makeMove(Move.squareName(Move.from(move)), Move.squareName(Move.to(move)),
+                    promotion == Position.PAWN ? null : PIECE_NAMES[promotion])) {
+                throw new IllegalStateException("Move " + Move.toString(move) + " of the game can't be played again: "
+                        + game.getLastError());
+            }
+        }
+        GameSnapshot replayed = game.snapshot();
+        return new GameSnapshot(replayed, kept);
+    }
+
+    // The same position with another line of moves
+    private GameSnapshot(GameSnapshot position, Line line) {
+        System.arraycopy(position.bitboards, 0, bitboards, 0, bitboards.length);
+        this.sideToMove = position.sideToMove;
+        this.castlingRights = position.castlingRights;
+        this.epSquare = position.epSquare;
+        this.hash = position.hash;
+        this.status = position.status;
+        this.halfmoveClock = position.halfmoveClock;
+        this.fullmoveNumber = position.fullmoveNumber;
+        this.start = position.start;
+        this.line = line;
+    }
+
+    // Puts this position on the board, replacing what was there
+    void setUp(Board board) {
+        board.setUp(bitboards, sideToMove, castlingRights, epSquare, new Piece[12][0]);
+    }
+
+    int getSideToMove() {
+        return sideToMove;
+    }
+
+    Line getLine() {
+        return line;
+    }
+
+    // The moves of a line, first move first
+    private static int[] moves(Line line) {
+        int[] moves = new int[line == null ? 0 : line.length];
+        for (Line node = line; node != null; node = node.previous) {
+            moves[node.length - 1] = node.move;
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,7 @@
+// The state of a game after the last move.
+enum GameStatus {
+    ACTIVE, // The game goes on.
+    CHECKMATE, // The player who just moved won.
+    STALEMATE, // Draw: the player to move has no legal move but isn't in check.
+    REPETITION // Draw: the same position occurred three times.
+}
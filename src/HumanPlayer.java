@@ -0,0 +1,23 @@
+import java.util.Scanner;
+
+// A player who types moves on the console.
+class HumanPlayer implements Player {
+    private final Scanner scanner;
+
+    public HumanPlayer(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+    @Override
+    public String nextMove(ChessGameFacade game) {
+        System.out.print("Enter your move (e.g., A2 to A3): ");
+        String move = scanner.nextLine().trim().toUpperCase();
+        // A pawn reaching the last row needs to say what it becomes; ask if it wasn't typed with the move
+        String[] parts = move.split(" TO ");
+        if (parts.length == 2 && parts[0].length() == 2 && parts[1].length() == 2 && game.isPromotion(parts[0], parts[1])) {
+            System.out.print("Pawn promotion! Enter new piece (queen/rook/knight/bishop): ");
+            move += " " + scanner.nextLine().trim();
+        }
+        return move;
+    }
+}
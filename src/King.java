@@ -5,36 +5,51 @@ class King extends Piece {
 
     // Constructor initializes the king with its color and move strategy.
     public King(String color) {
-        super(color);
-        this.moveStrategy = new KingMoveStrategy();
+        super(color, Position.KING);
+        this.moveStrategy = KingMoveStrategy.INSTANCE;
     }
 
     // Returns whether the king has moved.
+    @Override
     public boolean hasMoved() {
         return hasMoved;
     }
 
     // Sets the king's movement status.
+    @Override
     public void setMoved(boolean moved) {
         this.hasMoved = moved;
     }
 
     @Override
-    public String getSymbol() {
-        // Returns the symbol of the king: 'K' for white, 'k' for black.
-        return color.equals("white") ? "K" : "k";
+    public Piece copy() {
+        King copy = new King(color);
+        copy.setMoved(hasMoved);
+        return copy;
     }
 }
 
 // KingMoveStrategy defines the rules for how the king moves.
 class KingMoveStrategy implements MoveStrategy {
+    static final KingMoveStrategy INSTANCE = new KingMoveStrategy();
+
+    private KingMoveStrategy() {
+    }
+
     @Override
     public boolean isMoveValid(int startX, int startY, int endX, int endY, Board board) {
+        // Castling: the king moves two squares towards a rook, see Position.canCastle
+        if (startX == endX && startY == 4 && Math.abs(endY - startY) == 2) {
+            boolean white = board.getPiece(startX, startY).getColorIndex() == Position.WHITE;
+            int right = endY == 6 ? (white ? Position.WHITE_KING_SIDE : Position.BLACK_KING_SIDE)
+                    : (white ? Position.WHITE_QUEEN_SIDE : Position.BLACK_QUEEN_SIDE);
+            return startX == (white ? 7 : 0) && board.getPosition().canCastle(right);
+        }
         // The king can move one square in any direction.
         if (Math.abs(endX - startX) <= 1 && Math.abs(endY - startY) <= 1) {
             Piece target = board.getPiece(endX, endY);
             // The king can move to an empty square or capture an opponent's piece.
-            return target == null || !target.getColor().equals(board.getPiece(startX, startY).getColor());
+            return target == null || target.getColorIndex() != board.getPiece(startX, startY).getColorIndex();
         }
         return false;
     }
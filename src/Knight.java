@@ -3,19 +3,18 @@ class Knight extends Piece {
 
     // Constructor initializes the knight with its color and move strategy.
     public Knight(String color) {
-        super(color);
-        this.moveStrategy = new KnightMoveStrategy();
-    }
-
-    @Override
-    public String getSymbol() {
-        // Returns the symbol for the knight: 'N' for white, 'n' for black.
-        return color.equals("white") ? "N" : "n";
+        super(color, Position.KNIGHT);
+        this.moveStrategy = KnightMoveStrategy.INSTANCE;
     }
 }
 
 // KnightMoveStrategy defines the rules for how the knight moves.
 class KnightMoveStrategy implements MoveStrategy {
+    static final KnightMoveStrategy INSTANCE = new KnightMoveStrategy();
+
+    private KnightMoveStrategy() {
+    }
+
     @Override
     public boolean isMoveValid(int startX, int startY, int endX, int endY, Board board) {
         int dx = Math.abs(endX - startX);
@@ -0,0 +1,128 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Load test for ChessServer: opens many connections at once, each playing its own game as fast as
+// the server answers, and reports moves/second and move latency percentiles.
+// Every client shuffles its knights back and forth; the third repetition ends the game as a draw,
+// after which the client starts a new one, so games keep running for the whole test.
+// Usage: java LoadGenerator [port] [concurrent games] [seconds]
+public class LoadGenerator {
+    private static final String[] MOVES = {
+            "G1 TO F3", "G8 TO F6", "F3 TO G1", "F6 TO G8", "G1 TO F3", "G8 TO F6", "F3 TO G1", "F6 TO G8"};
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5555;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        CountDownLatch connected = new CountDownLatch(games);
+        CountDownLatch start = new CountDownLatch(1);
+        long[][] latencies = new long[games][];
+        int[] failures = new int[1];
+        ExecutorService executor = ChessServer.newThreadPerTaskExecutor();
+        long[] deadline = new long[1];
+
+        for (int i = 0; i < games; i++) {
+            int client = i;
+            executor.execute(() -> {
+                try {
+                    latencies[client] = play(port, connected, start, deadline);
+                } catch (IOException | InterruptedException e) {
+                    synchronized (failures) {
+                        failures[0]++;
+                    }
+                    connected.countDown();
+                }
+            });
+        }
+
+        connected.await();
+        System.out.println(games + " games connected, running for " + seconds + " s");
+        long startTime = System.nanoTime();
+        deadline[0] = startTime + seconds * 1_000_000_000L;
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - startTime;
+
+        // Merge every client's latencies to get the percentiles
+        int total = 0;
+        for (long[] clientLatencies : latencies) {
+            if (clientLatencies != null) total += clientLatencies.length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] clientLatencies : latencies) {
+            if (clientLatencies == null) continue;
+            System.arraycopy(clientLatencies, 0, all, offset, clientLatencies.length);
+            offset += clientLatencies.length;
+        }
+        Arrays.sort(all);
+
+        System.out.printf("moves: %d, failed clients: %d%n", total, failures[0]);
+        System.out.printf("moves/second: %.0f%n", total * 1e9 / elapsed);
+        if (total > 0) {
+            System.out.printf("latency p50: %.3f ms, p99: %.3f ms, p99.9: %.3f ms, max: %.3f ms%n",
+                    percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[total - 1] / 1e6);
+        }
+    }
+
+    // One client: connects, waits for the start signal and plays moves until the deadline.
+    // Returns the latency of every move in nanoseconds.
+    private static long[] play(int port, CountDownLatch connected, CountDownLatch start, long[] deadline)
+            throws IOException, InterruptedException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+            in.readLine(); // OK <game id> white
+            connected.countDown();
+            start.await();
+
+            long[] latencies = new long[1024];
+            int count = 0;
+            int ply = 0;
+            while (System.nanoTime() < deadline[0]) {
+                long sent = System.nanoTime();
+                String reply = send(in, out, MOVES[ply]);
+                if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                latencies[count++] = System.nanoTime() - sent;
+
+                if (reply.startsWith("OK")) {
+                    ply++;
+                } else if (reply.startsWith("DRAW")) {
+                    send(in, out, "NEW");
+                    ply = 0;
+                } else {
+                    throw new IOException("Unexpected reply: " + reply);
+                }
+            }
+            send(in, out, "QUIT");
+            return Arrays.copyOf(latencies, count);
+        }
+    }
+
+    private static String send(BufferedReader in, Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        if (reply == null) throw new IOException("Server closed the connection");
+        return reply;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)))] / 1e6;
+    }
+}
@@ -1,7 +1,7 @@
 public class Main {
     public static void main(String[] args) {
         // Create the board and observer
-        Board board = Board.getInstance();
+        Board board = new Board();
         GameObserver logger = new GameLogger();
 
         // Add the observer to the board
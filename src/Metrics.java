@@ -0,0 +1,395 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+// Counters and latency histograms of the rules engine, to watch a running game server.
+// Off by default, and then an instrumented call only reads one flag. Turn it on with setEnabled(true),
+// with the Enabled attribute over JMX once register() was called, or with "--metrics <seconds>" on
+// ChessServer, which also prints every metric that often.
+//
+// Latencies go into log-linear buckets like HdrHistogram's: exact below 64 ns, then 32 buckets per power
+// of two, so a percentile is off by at most about 3% and any latency fits. Like LongAdder's cells,
+// every histogram has a few stripes and a thread records into the stripe its id picks, so threads
+// on different cores rarely write to the same counts. Reading merges the stripes.
+//
+// Every metric is the MBean "chess:type=Metrics,name=<metric name>"; histograms show Count, MeanNanos,
+// P50Nanos, P90Nanos, P99Nanos, P999Nanos and MaxNanos, counters only Count.
+class Metrics {
+    static final Histogram MAKE_MOVE = new Histogram("ChessGameFacade.makeMove");
+    static final Counter REJECTED_MOVES = new Counter("ChessGameFacade.makeMove.rejected");
+    static final Histogram KING_IN_CHECK = new Histogram("Board.isKingInCheck");
+    static final Histogram AVOID_CHECK = new Histogram("Board.canAvoidCheck");
+    // Moves tried (made and taken back) while looking for a legal move, e.g. by canAvoidCheck
+    static final Counter LEGALITY_TRIALS = new Counter("MoveGenerator.hasLegalMove.movesTried");
+    static final Counter CAN_MOVE = new Counter("Piece.canMove");
+    // Time a move spends telling the board's observers, including waiting for room in an
+    // AsyncObserverDispatcher that blocks
+    static final Histogram OBSERVERS = new Histogram("Board.notifyObservers");
+    // Time AsyncObserverDispatcher's observers take for one batch of events
+    static final Histogram OBSERVER_BATCH = new Histogram("AsyncObserverDispatcher.batch");
+
+    private static final List<Metric> METRICS = List.of(MAKE_MOVE, REJECTED_MOVES, KING_IN_CHECK, AVOID_CHECK,
+            LEGALITY_TRIALS, CAN_MOVE, OBSERVERS, OBSERVER_BATCH);
+
+    private static volatile boolean enabled;
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    // Makes every metric (and a "chess:type=Metrics,name=control" MBean with the Enabled switch)
+    // visible over JMX in this JVM's platform MBean server. Calling it again does nothing.
+    static synchronized void register() {
+        if (registered) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new ControlBean(), new ObjectName("chess:type=Metrics,name=control"));
+            for (Metric metric : METRICS) {
+                server.registerMBean(metric, new ObjectName("chess:type=Metrics,name=" + metric.getName()));
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Can't register the metrics MBeans", e);
+        }
+        registered = true;
+    }
+
+    // Prints every metric to out every periodSeconds on a daemon thread: the totals so far and, for
+    // histograms, the percentiles of only the calls made since the last dump, so they follow the load
+    static ScheduledExecutorService startDump(PrintStream out, int periodSeconds) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Snapshot[] previous = new Snapshot[METRICS.size()]; // Histograms at the last dump
+        long[] previousCounts = new long[METRICS.size()]; // Counters at the last dump
+        executor.scheduleAtFixedRate(() -> {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%-40s %12s %10s %10s %10s %10s %10s%n",
+                    "metric", "count", "per s", "p50 us", "p99 us", "p99.9 us", "max us"));
+            for (int i = 0; i < METRICS.size(); i++) {
+                Metric metric = METRICS.get(i);
+                if (metric instanceof Histogram) {
+                    Snapshot now = ((Histogram) metric).snapshot();
+                    Snapshot interval = previous[i] == null ? now : now.minus(previous[i]);
+                    previous[i] = now;
+                    text.append(String.format("%-40s %12d %10.1f %10.2f %10.2f %10.2f %10.2f%n", metric.getName(),
+                            now.count(), interval.count() / (double) periodSeconds, interval.percentile(0.50) / 1e3,
+                            interval.percentile(0.99) / 1e3, interval.percentile(0.999) / 1e3, interval.max() / 1e3));
+                } else {
+                    long count = metric.count();
+                    text.append(String.format("%-40s %12d %10.1f%n", metric.getName(), count,
+                            (count - previousCounts[i]) / (double) periodSeconds));
+                    previousCounts[i] = count;
+                }
+            }
+            out.print(text);
+            out.flush();
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return executor;
+    }
+
+    // A named metric, readable over JMX
+    abstract static class Metric implements DynamicMBean {
+        private final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        abstract long count();
+
+        // Names of the attributes after Count, all longs
+        abstract String[] attributes();
+
+        abstract long attribute(String attribute);
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (attribute.equals("Count")) return count();
+            for (String known : attributes()) {
+                if (known.equals(attribute)) return attribute(attribute);
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            AttributeList list = new AttributeList();
+            for (String attribute : names) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the interface asks
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action), "The bean has no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            String[] names = attributes();
+            MBeanAttributeInfo[] infos = new MBeanAttributeInfo[names.length + 1];
+            infos[0] = new MBeanAttributeInfo("Count", "long", "Number of calls or events", true, false, false);
+            for (int i = 0; i < names.length; i++) {
+                infos[i + 1] = new MBeanAttributeInfo(names[i], "long", names[i], true, false, false);
+            }
+            return new MBeanInfo(getClass().getName(), name, infos, null, null, null);
+        }
+    }
+
+    static final class Counter extends Metric {
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        void add(long amount) {
+            count.add(amount);
+        }
+
+        void increment() {
+            count.increment();
+        }
+
+        @Override
+        long count() {
+            return count.sum();
+        }
+
+        @Override
+        String[] attributes() {
+            return new String[0];
+        }
+
+        @Override
+        long attribute(String attribute) {
+            throw new IllegalArgumentException(attribute);
+        }
+    }
+
+    static final class Histogram extends Metric {
+        private static final String[] ATTRIBUTES = {"MeanNanos", "P50Nanos", "P90Nanos", "P99Nanos", "P999Nanos", "MaxNanos"};
+        private static final int BUCKETS = 64 + (63 - 6) * 32; // Exact below 64, then 32 per power of two
+        private static final int SUM = BUCKETS; // Where a stripe keeps the total of its values
+
+        private final AtomicLongArray[] stripes;
+
+        Histogram(String name) {
+            super(name);
+            // A power of two, at least twice the number of cores but no more than 16
+            int count = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2, 16);
+            stripes = new AtomicLongArray[count];
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new AtomicLongArray(BUCKETS + 1);
+            }
+        }
+
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+            stripe.getAndIncrement(bucket(value));
+            stripe.getAndAdd(SUM, value);
+        }
+
+        // The counts of all stripes added up; the stripes keep counting meanwhile, so the
+        // result may hold part of a call that is being recorded
+        Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            long sum = 0;
+            for (AtomicLongArray stripe : stripes) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    long n = stripe.get(i);
+                    counts[i] += n;
+                    count += n;
+                }
+                sum += stripe.get(SUM);
+            }
+            return new Snapshot(counts, count, sum);
+        }
+
+        @Override
+        long count() {
+            return snapshot().count();
+        }
+
+        @Override
+        String[] attributes() {
+            return ATTRIBUTES;
+        }
+
+        @Override
+        long attribute(String attribute) {
+            Snapshot snapshot = snapshot();
+            switch (attribute) {
+                case "MeanNanos": return Math.round(snapshot.mean());
+                case "P50Nanos": return snapshot.percentile(0.50);
+                case "P90Nanos": return snapshot.percentile(0.90);
+                case "P99Nanos": return snapshot.percentile(0.99);
+                case "P999Nanos": return snapshot.percentile(0.999);
+                case "MaxNanos": return snapshot.max();
+                default: throw new IllegalArgumentException(attribute);
+            }
+        }
+
+        static int bucket(long value) {
+            if (value < 64) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value); // At least 6
+            return 64 + (exponent - 6) * 32 + (int) (value >>> (exponent - 5)) - 32;
+        }
+
+        // Smallest value that goes into the bucket
+        static long lowest(int bucket) {
+            if (bucket < 64) return bucket;
+            int exponent = (bucket - 64) / 32 + 6;
+            return (long) ((bucket - 64) % 32 + 32) << (exponent - 5);
+        }
+
+        // Largest value that goes into the bucket
+        static long highest(int bucket) {
+            return bucket + 1 < BUCKETS ? lowest(bucket + 1) - 1 : Long.MAX_VALUE;
+        }
+    }
+
+    // The counts of a histogram at one moment
+    static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        long count() {
+            return count;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        // The value that the given fraction of the recorded values are at most (to the bucket's precision), 0 if none
+        long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(rank, 1)) return Histogram.highest(i);
+            }
+            return 0;
+        }
+
+        // The largest recorded value (to the bucket's precision), 0 if none
+        long max() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) return Histogram.highest(i);
+            }
+            return 0;
+        }
+
+        // What was recorded after the earlier snapshot of the same histogram
+        Snapshot minus(Snapshot earlier) {
+            long[] difference = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                difference[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(difference, count - earlier.count, sum - earlier.sum);
+        }
+    }
+
+    // The Enabled switch over JMX
+    private static final class ControlBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (!attribute.equals("Enabled")) throw new AttributeNotFoundException(attribute);
+            return enabled;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            if (!attribute.getName().equals("Enabled")) throw new AttributeNotFoundException(attribute.getName());
+            setEnabled((Boolean) attribute.getValue());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (name.equals("Enabled")) list.add(new Attribute(name, enabled));
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            AttributeList set = new AttributeList();
+            for (Attribute attribute : attributes.asList()) {
+                if (attribute.getName().equals("Enabled")) {
+                    setEnabled((Boolean) attribute.getValue());
+                    set.add(attribute);
+                }
+            }
+            return set;
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action), "The bean has no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo enabledInfo = new MBeanAttributeInfo("Enabled", "boolean",
+                    "Whether the engine records metrics", true, true, true);
+            return new MBeanInfo(getClass().getName(), "Switches metrics on and off",
+                    new MBeanAttributeInfo[] {enabledInfo}, null, null, null);
+        }
+    }
+}
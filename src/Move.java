@@ -0,0 +1,77 @@
+// A move packed into a single int, so move lists and search never allocate objects for moves.
+// Bits 0-5 hold the start square, bits 6-11 the end square (see Position.square)
+// and bits 12-14 the piece type a pawn promotes to (Position.PAWN when it is not a promotion).
+// Bits 15-16 flag the special moves, so making and undoing them needs no look at the board:
+// castling is the king's move of two squares (the rook moves along), en passant the pawn's capture.
+class Move {
+    static final int CASTLING = 1 << 15;
+    static final int EN_PASSANT = 1 << 16;
+
+    // Names of the piece types, indexed by type, as used in move text
+    private static final String[] PIECE_NAMES = {"PAWN", "KNIGHT", "BISHOP", "ROOK", "QUEEN", "KING"};
+
+    // Packs a move without promotion.
+    static int create(int from, int to) {
+        return from | (to << 6);
+    }
+
+    // Packs a move that promotes a pawn into the given piece type.
+    static int create(int from, int to, int promotion) {
+        return from | (to << 6) | (promotion << 12);
+    }
+
+    static int from(int move) {
+        return move & 63;
+    }
+
+    static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    static boolean isCastling(int move) {
+        return (move & CASTLING) != 0;
+    }
+
+    static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    // The square of the pawn an en passant move captures: beside the start square, on the end square's column
+    static int enPassantVictim(int move) {
+        return (from(move) & ~7) | (to(move) & 7);
+    }
+
+    // Start and end square of the rook that moves along when castling: castling to the king side
+    // (the king ends on column 6) takes the corner rook to column 5, to the queen side from column 0 to 3
+    static int castlingRookFrom(int move) {
+        int to = to(move);
+        return (to & 7) == 6 ? to + 1 : to - 2;
+    }
+
+    static int castlingRookTo(int move) {
+        int to = to(move);
+        return (to & 7) == 6 ? to - 1 : to + 1;
+    }
+
+    // Turns a square index into chess notation like "E2".
+    static String squareName(int square) {
+        return "" + (char) ('A' + (square & 7)) + (8 - (square >>> 3));
+    }
+
+    // Turns chess notation like "E2" into a square index.
+    static int parseSquare(String name) {
+        int col = name.charAt(0) - 'A';
+        int row = 8 - Character.getNumericValue(name.charAt(1));
+        return Position.square(row, col);
+    }
+
+    // Writes the move in the same format players type it in (e.g. "E2 TO E4" or "E7 TO E8 QUEEN").
+    static String toString(int move) {
+        String text = squareName(from(move)) + " TO " + squareName(to(move));
+        return promotion(move) == Position.PAWN ? text : text + " " + PIECE_NAMES[promotion(move)];
+    }
+}
@@ -0,0 +1,95 @@
+// What an observer learns about a move when it is told about it later, on another thread
+// (see AsyncObserverDispatcher). By then the board has moved on, so the event carries its own copy
+// of the position right after the move: one byte per square holding the piece code (Piece.getCode),
+// or EMPTY. Events live in preallocated ring buffer slots and are reused, so an observer must copy
+// anything it wants to keep after its call returns.
+class MoveEvent {
+    static final byte EMPTY = -1;
+
+    private static final String SYMBOLS = "PNBRQK??pnbrqk"; // Indexed by piece code
+
+    final byte[] squares = new byte[64];
+    Board source; // The board the move was made on
+    int move; // The packed move (see Move), or 0 if the board changed without a move
+    long sequence; // Counts the events of one dispatcher, starting at 0
+    long publishedNanos; // System.nanoTime() when the move was made
+    int coalesced; // Earlier events for the same board this one replaced because the queue was full
+
+    // Takes a snapshot of the board after the move
+    void capture(Board board, int move, long sequence, long publishedNanos) {
+        for (int i = 0; i < 64; i++) {
+            Piece piece = board.getPiece(i >>> 3, i & 7);
+            squares[i] = piece == null ? EMPTY : piece.getCode();
+        }
+        this.source = board;
+        this.move = move;
+        this.sequence = sequence;
+        this.publishedNanos = publishedNanos;
+        this.coalesced = 0;
+    }
+
+    void copyFrom(MoveEvent other) {
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        source = other.source;
+        move = other.move;
+        sequence = other.sequence;
+        publishedNanos = other.publishedNanos;
+        coalesced = other.coalesced;
+    }
+
+    public int getMove() {
+        return move;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+
+    public int getCoalesced() {
+        return coalesced;
+    }
+
+    // The piece code on a square after the move, or EMPTY
+    public byte getSquare(int x, int y) {
+        return squares[Position.square(x, y)];
+    }
+
+    // Builds a board with the position after the move. Whether kings, rooks and pawns
+    // had moved before is not part of the event.
+    public Board toBoard() {
+        Board board = new Board();
+        for (int i = 0; i < 64; i++) {
+            byte code = squares[i];
+            if (code != EMPTY) {
+                String color = (code >>> 3) == Position.WHITE ? "white" : "black";
+                board.setPiece(i >>> 3, i & 7, PieceFactory.createPiece(code & 7, color));
+            }
+        }
+        return board;
+    }
+
+    // Draws the position the same way Board.toString does
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(200);
+        appendTo(text);
+        return text.toString();
+    }
+
+    void appendTo(StringBuilder text) {
+        text.append("  A B C D E F G H\n");
+        for (int x = 0; x < 8; x++) {
+            text.append(8 - x).append(' ');
+            for (int y = 0; y < 8; y++) {
+                byte code = squares[x * 8 + y];
+                text.append(code == EMPTY ? '.' : SYMBOLS.charAt(code)).append(' ');
+            }
+            text.append(8 - x).append('\n');
+        }
+        text.append("  A B C D E F G H\n");
+    }
+}
@@ -0,0 +1,154 @@
+// Generates moves straight from the bitboards instead of asking every piece about all 64 squares.
+// Only squares a piece can actually reach are listed, following the same rules as the MoveStrategy classes.
+class MoveGenerator {
+    // Fills the list with every move the pieces of the given color could make,
+    // without checking whether the move leaves their own king in check.
+    static void generate(Board board, int color, MoveList moves) {
+        moves.clear();
+        Position position = board.getPosition();
+        long own = position.occupancy(color);
+        long enemy = position.occupancy(color ^ 1);
+
+        generatePawnMoves(position, color, enemy, moves);
+
+        long knights = position.pieces(color, Position.KNIGHT);
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            addTargets(from, Bitboards.KNIGHT_ATTACKS[from] & ~own, moves);
+        }
+
+        long bishops = position.pieces(color, Position.BISHOP) | position.pieces(color, Position.QUEEN);
+        while (bishops != 0) {
+            int from = Long.numberOfTrailingZeros(bishops);
+            bishops &= bishops - 1;
+            addTargets(from, Bitboards.bishopAttacks(from, position.occupied()) & ~own, moves);
+        }
+
+        long rooks = position.pieces(color, Position.ROOK) | position.pieces(color, Position.QUEEN);
+        while (rooks != 0) {
+            int from = Long.numberOfTrailingZeros(rooks);
+            rooks &= rooks - 1;
+            addTargets(from, Bitboards.rookAttacks(from, position.occupied()) & ~own, moves);
+        }
+
+        long kings = position.pieces(color, Position.KING);
+        while (kings != 0) {
+            int from = Long.numberOfTrailingZeros(kings);
+            kings &= kings - 1;
+            addTargets(from, Bitboards.KING_ATTACKS[from] & ~own, moves);
+        }
+        if (position.getCastlingRights() != 0) {
+            generateCastling(position, color, moves);
+        }
+    }
+
+    // Fills the list with the moves that don't leave the king of the given color in check.
+    static void generateLegal(Board board, int color, MoveList moves) {
+        generate(board, color, moves);
+        int legal = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (!board.leavesKingInCheck(move, color)) {
+                moves.set(legal++, move);
+            }
+        }
+        moves.truncate(legal);
+    }
+
+    // Checks if the given color has at least one legal move, stopping at the first one found.
+    static boolean hasLegalMove(Board board, int color, MoveList buffer) {
+        generate(board, color, buffer);
+        for (int i = 0; i < buffer.size(); i++) {
+            if (!board.leavesKingInCheck(buffer.get(i), color)) {
+                if (Metrics.isEnabled()) Metrics.LEGALITY_TRIALS.add(i + 1);
+                return true;
+            }
+        }
+        if (Metrics.isEnabled()) Metrics.LEGALITY_TRIALS.add(buffer.size());
+        return false;
+    }
+
+    private static void generatePawnMoves(Position position, int color, long enemy, MoveList moves) {
+        boolean isWhite = color == Position.WHITE;
+        int direction = isWhite ? -1 : 1; // White moves up, black moves down
+        int startRow = isWhite ? 6 : 1;
+        int lastRow = isWhite ? 0 : 7;
+        long empty = ~position.occupied();
+
+        long pawns = position.pieces(color, Position.PAWN);
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            int x = from >>> 3;
+            int y = from & 7;
+            int toX = x + direction;
+            if (toX < 0 || toX > 7) continue;
+
+            // Moving forward one square, or two from the starting row
+            int forward = toX * 8 + y;
+            if ((empty & (1L << forward)) != 0) {
+                addPawnMove(from, forward, toX == lastRow, moves);
+            }
+            if (x == startRow && (empty & (1L << forward)) != 0) {
+                int doubleStep = (x + 2 * direction) * 8 + y;
+                if ((empty & (1L << doubleStep)) != 0) {
+                    moves.add(Move.create(from, doubleStep));
+                }
+            }
+
+            // Capturing diagonally
+            if (y > 0 && (enemy & (1L << (forward - 1))) != 0) {
+                addPawnMove(from, forward - 1, toX == lastRow, moves);
+            }
+            if (y < 7 && (enemy & (1L << (forward + 1))) != 0) {
+                addPawnMove(from, forward + 1, toX == lastRow, moves);
+            }
+        }
+
+        // Capturing a pawn that just made a double step, on the square it skipped
+        int ep = position.getEpSquare();
+        if (ep >= 0 && ep >>> 3 == (isWhite ? 2 : 5)) { // The skipped square is behind an enemy pawn
+            long capturers = Bitboards.PAWN_ATTACKS[color ^ 1][ep] & position.pieces(color, Position.PAWN);
+            while (capturers != 0) {
+                int from = Long.numberOfTrailingZeros(capturers);
+                capturers &= capturers - 1;
+                moves.add(Move.create(from, ep) | Move.EN_PASSANT);
+            }
+        }
+    }
+
+    // A pawn reaching the last row can become any of four pieces, the queen listed first.
+    private static void addPawnMove(int from, int to, boolean promotes, MoveList moves) {
+        if (promotes) {
+            for (int type = Position.QUEEN; type >= Position.KNIGHT; type--) {
+                moves.add(Move.create(from, to, type));
+            }
+        } else {
+            moves.add(Move.create(from, to));
+        }
+    }
+
+    // Castling is listed when the right is still there, the squares between king and rook are empty and the
+    // king doesn't castle out of or through check; like other king moves, the end square is left to the check test.
+    private static void generateCastling(Position position, int color, MoveList moves) {
+        int row = color == Position.WHITE ? 7 : 0;
+        int king = Position.square(row, 4);
+        int kingSide = color == Position.WHITE ? Position.WHITE_KING_SIDE : Position.BLACK_KING_SIDE;
+        int queenSide = color == Position.WHITE ? Position.WHITE_QUEEN_SIDE : Position.BLACK_QUEEN_SIDE;
+        if (position.canCastle(kingSide)) {
+            moves.add(Move.create(king, king + 2) | Move.CASTLING);
+        }
+        if (position.canCastle(queenSide)) {
+            moves.add(Move.create(king, king - 2) | Move.CASTLING);
+        }
+    }
+
+    private static void addTargets(int from, long targets, MoveList moves) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves.add(Move.create(from, to));
+        }
+    }
+}
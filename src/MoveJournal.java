@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+// Append-only binary journal of the moves of every hosted game, so games survive a restart.
+//
+// Records are a type byte, the game id as a varint and, for moves, the move in two bytes
+// (start square, end square and promotion, as packed by Move), so a move usually takes 4-5 bytes:
+//   START <game>         a game began from the start position
+//   MOVE  <game> <move>  a move was played in that game
+//   END   <game>         the game is over and doesn't need to be recovered
+// Records are collected in memory and written in batches, each batch framed by its length and a
+// CRC32, so a batch cut short by a crash is recognized and cut off when the journal is opened again.
+// Safe to use from many threads; games on different threads just interleave their records.
+class MoveJournal implements AutoCloseable {
+    enum FsyncPolicy {
+        NEVER, // Leave it to the operating system when the data reaches the disk
+        EVERY_BATCH, // Force every batch to the disk before the next one is written (safest, slowest)
+        PERIODIC // Force at most once per flush interval
+    }
+
+    private static final byte START = 1;
+    private static final byte MOVE = 2;
+    private static final byte END = 3;
+    private static final int FRAME_HEADER = 8; // Length and CRC32 of the batch
+    private static final int MAX_RECORD = 16;
+    private static final String[] PIECE_NAMES = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+
+    private final FileChannel channel;
+    private final FsyncPolicy fsync;
+    private final long flushIntervalNanos;
+    private final ReentrantLock writeLock = new ReentrantLock(); // Held while a batch goes to the file
+    private final CRC32 crc = new CRC32(); // Only used under writeLock
+    private final Thread flusher;
+    private ByteBuffer current; // Records waiting to be written; guarded by this
+    private ByteBuffer spare; // The other buffer, written to the file under writeLock
+    private long lastForce = System.nanoTime();
+    private volatile boolean closed;
+
+    // Opens (or creates) a journal for appending. A batch left incomplete by a crash is cut off first.
+    // Waiting records are written at least every flushIntervalMillis, and whenever a batch fills up.
+    public MoveJournal(Path file, FsyncPolicy fsync, long flushIntervalMillis) throws IOException {
+        this(file, fsync, flushIntervalMillis, 1 << 16);
+    }
+
+    public MoveJournal(Path file, FsyncPolicy fsync, long flushIntervalMillis, int batchBytes) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fsync = fsync;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+        channel.truncate(validLength(channel));
+        channel.position(channel.size());
+        current = ByteBuffer.allocateDirect(batchBytes);
+        spare = ByteBuffer.allocateDirect(batchBytes);
+        current.position(FRAME_HEADER);
+
+        flusher = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Thread.sleep(Math.max(1, flushIntervalMillis));
+                    flush();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Move journal flush failed: " + e.getMessage());
+                }
+            }
+        }, "journal-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void gameStarted(long gameId) throws IOException {
+        append(START, gameId, 0);
+    }
+
+    public void moveMade(long gameId, int move) throws IOException {
+        append(MOVE, gameId, move);
+    }
+
+    public void gameEnded(long gameId) throws IOException {
+        append(END, gameId, 0);
+    }
+
+    // An observer that records every move made on the board it is added to as a move of the given game.
+    // Behind an AsyncObserverDispatcher it takes the moves from the events (a board rebuilt from an event
+    // has no moves to ask for), so the dispatcher must serve only this game's board and must not lose
+    // moves: use Backpressure.BLOCK.
+    public GameObserver observerFor(long gameId) {
+        return new GameObserver() {
+            @Override
+            public void update(Board board) {
+                try {
+                    MoveJournal.this.moveMade(gameId, board.getLastMove());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Can't write to the move journal", e);
+                }
+            }
+
+            @Override
+            public void moveMade(MoveEvent event) {
+                movesMade(new MoveEvent[]{event}, 1);
+            }
+
+            @Override
+            public void movesMade(MoveEvent[] events, int count) {
+                try {
+                    append(gameId, events, count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Can't write to the move journal", e);
+                }
+            }
+        };
+    }
+
+    private void append(byte type, long gameId, int move) throws IOException {
+        while (true) {
+            synchronized (this) {
+                if (closed) throw new IOException("The move journal is closed");
+                if (current.remaining() >= MAX_RECORD) {
+                    put(type, gameId, move);
+                    return;
+                }
+            }
+            flush(); // The batch is full
+        }
+    }
+
+    // Appends the moves of a dispatcher batch together, so other games' records don't come in between
+    // (unless the batch doesn't fit in what is left of the journal's batch)
+    private void append(long gameId, MoveEvent[] events, int count) throws IOException {
+        int i = 0;
+        while (true) {
+            synchronized (this) {
+                if (closed) throw new IOException("The move journal is closed");
+                for (; i < count && current.remaining() >= MAX_RECORD; i++) {
+                    put(MOVE, gameId, events[i].getMove());
+                }
+                if (i == count) return;
+            }
+            flush(); // The batch is full
+        }
+    }
+
+    // Only called holding this
+    private void put(byte type, long gameId, int move) {
+        current.put(type);
+        putVarint(current, gameId);
+        if (type == MOVE) current.putShort((short) (move & 0x7fff));
+    }
+
+    // Writes the waiting records to the file now (and forces them to the disk if the policy says so)
+    public void flush() throws IOException {
+        writeLock.lock();
+        try {
+            ByteBuffer batch;
+            synchronized (this) {
+                if (current.position() == FRAME_HEADER) return;
+                batch = current;
+                current = spare;
+                spare = batch;
+                current.clear().position(FRAME_HEADER);
+            }
+            // Records can go on into the other buffer while this one is written
+            int payload = batch.position() - FRAME_HEADER;
+            crc.reset();
+            batch.flip().position(FRAME_HEADER);
+            crc.update(batch);
+            batch.putInt(0, payload).putInt(4, (int) crc.getValue()).position(0);
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            long now = System.nanoTime();
+            if (fsync == FsyncPolicy.EVERY_BATCH || fsync == FsyncPolicy.PERIODIC && now - lastForce >= flushIntervalNanos) {
+                channel.force(false);
+                lastForce = now;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true; // Nothing new gets in after this
+        }
+        flusher.interrupt();
+        flush();
+        writeLock.lock();
+        try {
+            if (fsync != FsyncPolicy.NEVER) channel.force(false);
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Rebuilds every game that was started but not ended, by replaying its moves on a new game.
+    // Games whose last move ended them (checkmate, stalemate, repetition) are left out too.
+    // The map is ordered by when the games started.
+    public static Map<Long, ChessGameFacade> recover(Path file) throws IOException {
+        Map<Long, List<Integer>> moves = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                FrameReader reader = new FrameReader(in);
+                ByteBuffer frame;
+                while ((frame = reader.next()) != null) {
+                    while (frame.hasRemaining()) {
+                        byte type = frame.get();
+                        long gameId = getVarint(frame);
+                        if (type == START) {
+                            moves.put(gameId, new ArrayList<>());
+                        } else if (type == MOVE) {
+                            int move = frame.getShort() & 0x7fff;
+                            List<Integer> game = moves.get(gameId);
+                            if (game != null) game.add(move);
+                        } else {
+                            moves.remove(gameId);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<Long, ChessGameFacade> games = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<Integer>> entry : moves.entrySet()) {
+            ChessGameFacade game = new ChessGameFacade();
+            for (int move : entry.getValue()) {
+                String promotion = Move.promotion(move) == Position.PAWN ? null : PIECE_NAMES[Move.promotion(move)];
+                if (!game.makeMove(Move.squareName(Move.from(move)), Move.squareName(Move.to(move)), promotion)) {
+                    throw new IOException("Game " + entry.getKey() + " in the journal has an illegal move "
+                            + Move.toString(move) + ": " + game.getLastError());
+                }
+            }
+            if (game.getStatus() == GameStatus.ACTIVE) {
+                games.put(entry.getKey(), game);
+            }
+        }
+        return games;
+    }
+
+    // Length of the journal up to the end of its last complete batch
+    private static long validLength(FileChannel in) throws IOException {
+        FrameReader reader = new FrameReader(in);
+        while (reader.next() != null) {
+        }
+        return reader.validLength;
+    }
+
+    // Reads the batches of a journal from the start, stopping at the first incomplete or damaged one
+    private static class FrameReader {
+        private final FileChannel in;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long validLength; // End of the last good batch
+
+        FrameReader(FileChannel in) {
+            this.in = in;
+        }
+
+        // The records of the next batch, or null at the end of the good part of the journal
+        ByteBuffer next() throws IOException {
+            long size = in.size();
+            if (validLength + FRAME_HEADER > size) return null;
+            buffer.clear().limit(FRAME_HEADER);
+            readFully(validLength);
+            int payload = buffer.getInt(0);
+            int checksum = buffer.getInt(4);
+            if (payload <= 0 || validLength + FRAME_HEADER + payload > size) return null;
+            if (buffer.capacity() < payload) buffer = ByteBuffer.allocate(payload);
+            buffer.clear().limit(payload);
+            readFully(validLength + FRAME_HEADER);
+            buffer.flip();
+            crc.reset();
+            crc.update(buffer);
+            if ((int) crc.getValue() != checksum) return null;
+            validLength += FRAME_HEADER + payload;
+            return buffer.position(0);
+        }
+
+        private void readFully(long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = in.read(buffer, position);
+                if (read < 0) throw new IOException("The journal ended early");
+                position += read;
+            }
+        }
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+// A reusable, preallocated buffer of moves packed as ints (see Move).
+// Move generation writes into it instead of creating new lists.
+class MoveList {
+    // No chess position has more than 218 legal moves, so this is always enough.
+    static final int MAX_MOVES = 256;
+
+    private final int[] moves = new int[MAX_MOVES];
+    private int size;
+
+    // Empties the list so it can be filled again.
+    void clear() {
+        size = 0;
+    }
+
+    void add(int move) {
+        moves[size++] = move;
+    }
+
+    int get(int index) {
+        return moves[index];
+    }
+
+    // Overwrites a move, used when filtering the list in place.
+    void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    // Drops every move from the given index on.
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Checks if the list contains a move from one square to another.
+    boolean contains(int from, int to) {
+        for (int i = 0; i < size; i++) {
+            if (Move.from(moves[i]) == from && Move.to(moves[i]) == to) return true;
+        }
+        return false;
+    }
+}
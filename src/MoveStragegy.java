@@ -1,5 +1,6 @@
 // Behavioral Pattern: Strategy Pattern
 // Purpose: Encapsulate movement rules for each piece.
+// Strategies keep no state, so each one has a single shared INSTANCE used by every piece of its type.
 interface MoveStrategy {
     // Method to check if the move is valid for a piece from start to end position on the board
     boolean isMoveValid(int startX, int startY, int endX, int endY, Board board);
@@ -0,0 +1,119 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Moves known to be good in the opening, looked up by position instead of searched for.
+// The book is a file of 16-byte entries (position hash, move, weight) sorted by hash, behind a
+// 16-byte header (a magic number and the entry count). It is memory-mapped and searched with a
+// binary search, so opening even a large book costs nothing and lookups only touch a few pages.
+// Hashes are Board.getHash for the side to move. Build a book from PGN files with OpeningBookBuilder.
+// Lookups don't change anything, so one book can be shared by all threads.
+class OpeningBook implements Closeable {
+    static final long MAGIC = 0x43484553_53424B32L; // "CHESSBK2" (hashes include castling rights and en passant)
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int size;
+
+    public OpeningBook(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (channel.size() > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Opening books larger than 2 GB are not supported");
+        }
+        entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (channel.size() < HEADER_SIZE || entries.getLong(0) != MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not an opening book");
+        }
+        long count = entries.getLong(8);
+        if (HEADER_SIZE + count * ENTRY_SIZE != channel.size()) {
+            channel.close();
+            throw new IOException(file + " is damaged: its size doesn't match its entry count");
+        }
+        size = (int) count;
+    }
+
+    // Number of entries (position and move pairs) in the book
+    public int size() {
+        return size;
+    }
+
+    // Fills moves and weights with the book moves for the position (as many as fit)
+    // and returns how many there are, heaviest first
+    public int find(long hash, int[] moves, int[] weights) {
+        int count = 0;
+        for (int i = firstEntry(hash); i < size && hash(i) == hash && count < moves.length; i++) {
+            moves[count] = move(i);
+            weights[count] = weight(i);
+            count++;
+        }
+        return count;
+    }
+
+    // The move with the highest weight for the position, or 0 if the position is not in the book
+    public int bestMove(long hash) {
+        int i = firstEntry(hash);
+        return i < size && hash(i) == hash ? move(i) : 0;
+    }
+
+    // A book move for the position picked at random in proportion to the weights (so the computer
+    // doesn't always play the same opening), or 0 if the position is not in the book
+    public int pickMove(long hash, Random random) {
+        int first = firstEntry(hash);
+        long total = 0;
+        for (int i = first; i < size && hash(i) == hash; i++) {
+            total += weight(i);
+        }
+        if (total == 0) return 0;
+        long pick = (long) (random.nextDouble() * total);
+        for (int i = first; ; i++) {
+            pick -= weight(i);
+            if (pick < 0) return move(i);
+        }
+    }
+
+    // Index of the first entry with the hash, or where it would be if there is none
+    private int firstEntry(long hash) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(hash(middle), hash) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long hash(int index) {
+        return entries.getLong(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    private int move(int index) {
+        return entries.getInt(HEADER_SIZE + index * ENTRY_SIZE + 8);
+    }
+
+    private int weight(int index) {
+        return entries.getInt(HEADER_SIZE + index * ENTRY_SIZE + 12);
+    }
+
+    // Writes one entry the way the book stores it (used by OpeningBookBuilder)
+    static void putEntry(ByteBuffer out, long hash, int move, int weight) {
+        out.putLong(hash).putInt(move).putInt(weight);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
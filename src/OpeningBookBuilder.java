@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Builds an OpeningBook from PGN game collections: every position reached in the first plies of the
+// games, with every move played from it and how many games played it as its weight.
+// Games are replayed with PgnReplayer, so a game stops counting at its first illegal move.
+// Usage: java OpeningBookBuilder <book file> <plies> [--min-games n] <file.pgn> [more files...]
+//   Moves played in fewer than n games (default 2) are left out, which keeps one-off ideas out of the book.
+public class OpeningBookBuilder {
+    private long[] hashes = new long[1 << 16];
+    private int[] moves = new int[1 << 16];
+    private int size;
+    private long games;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java OpeningBookBuilder <book file> <plies> [--min-games n] <file.pgn> [more files...]");
+            return;
+        }
+        Path book = Paths.get(args[0]);
+        int plies = Integer.parseInt(args[1]);
+        int minGames = 2;
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        long start = System.nanoTime();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--min-games") && i + 1 < args.length) {
+                minGames = Integer.parseInt(args[++i]);
+            } else {
+                builder.addGames(Paths.get(args[i]), plies);
+            }
+        }
+        int entries = builder.write(book, minGames);
+        System.out.printf("%d games, %d book entries written to %s in %.2f s%n",
+                builder.games, entries, book, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Adds the first plies of every game in the file
+    public void addGames(Path pgn, int plies) throws IOException {
+        PgnReplayer replayer = new PgnReplayer();
+        replayer.recordPlies(plies);
+        try (PgnReader reader = new PgnReader(pgn)) {
+            PgnReader.Batch batch = new PgnReader.Batch();
+            while (reader.next(batch)) {
+                for (int i = 0; i < batch.size; i++) {
+                    replayer.replay(batch.buffer, batch.starts[i], batch.ends[i]);
+                    for (int ply = 0; ply < replayer.recordedPlies(); ply++) {
+                        add(replayer.recordedHash(ply), replayer.recordedMove(ply));
+                    }
+                    games++;
+                }
+            }
+        }
+    }
+
+    private void add(long hash, int move) {
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        hashes[size] = hash;
+        moves[size] = move;
+        size++;
+    }
+
+    // Writes the book: one entry per position and move played in at least minGames games,
+    // sorted by hash and, for the same position, heaviest first. Returns the number of entries.
+    public int write(Path book, int minGames) throws IOException {
+        sort(0, size - 1);
+
+        // Count how often each (position, move) pair occurs, compacting the arrays in place;
+        // the counts go into a third array
+        int[] weights = new int[size];
+        int entries = 0;
+        for (int i = 0; i < size; ) {
+            int j = i;
+            while (j < size && hashes[j] == hashes[i] && moves[j] == moves[i]) j++;
+            if (j - i >= minGames) {
+                hashes[entries] = hashes[i];
+                moves[entries] = moves[i];
+                weights[entries] = j - i;
+                entries++;
+            }
+            i = j;
+        }
+
+        // Heaviest move first within each position
+        for (int i = 0; i < entries; ) {
+            int j = i;
+            while (j < entries && hashes[j] == hashes[i]) j++;
+            for (int a = i + 1; a < j; a++) {
+                for (int b = a; b > i && weights[b] > weights[b - 1]; b--) {
+                    swap(b, b - 1);
+                    int weight = weights[b];
+                    weights[b] = weights[b - 1];
+                    weights[b - 1] = weight;
+                }
+            }
+            i = j;
+        }
+
+        try (FileChannel out = FileChannel.open(book, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putLong(OpeningBook.MAGIC).putLong(entries);
+            for (int i = 0; i < entries; i++) {
+                if (buffer.remaining() < OpeningBook.ENTRY_SIZE) {
+                    writeOut(out, buffer);
+                }
+                OpeningBook.putEntry(buffer, hashes[i], moves[i], weights[i]);
+            }
+            writeOut(out, buffer);
+        }
+        return entries;
+    }
+
+    private static void writeOut(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Quicksort of the (hash, move) pairs by unsigned hash, then move, as OpeningBook searches them
+    private void sort(int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            long pivotHash = hashes[middle];
+            int pivotMove = moves[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(i, pivotHash, pivotMove) < 0) i++;
+                while (compare(j, pivotHash, pivotMove) > 0) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            // Recurse into the smaller part so the stack stays shallow
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(j, hashes[j - 1], moves[j - 1]) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compare(int index, long hash, int move) {
+        int result = Long.compareUnsigned(hashes[index], hash);
+        return result != 0 ? result : Integer.compare(moves[index], move);
+    }
+
+    private void swap(int a, int b) {
+        long hash = hashes[a];
+        hashes[a] = hashes[b];
+        hashes[b] = hash;
+        int move = moves[a];
+        moves[a] = moves[b];
+        moves[b] = move;
+    }
+}
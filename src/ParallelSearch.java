@@ -0,0 +1,112 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Searches with several threads at once (Lazy SMP): every thread runs its own SearchEngine on its own
+// copy of the board, and they all share one transposition table. The threads don't coordinate otherwise;
+// results one thread stores in the table speed up the others, and half of the helpers start one ply
+// deeper so they don't all walk the same tree in lockstep. The main thread's result is the answer.
+class ParallelSearch {
+    private final TranspositionTable table;
+    private final SearchEngine[] engines;
+    private final ExecutorService helpers;
+
+    // Results of the last search
+    private long nodes;
+    private long elapsedNanos;
+
+    public ParallelSearch(int threads) {
+        this(threads, new TranspositionTable(1 << 22, TranspositionTable.ReplacementPolicy.DEPTH_AND_AGE));
+    }
+
+    public ParallelSearch(int threads, TranspositionTable table) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one search thread: " + threads);
+        this.table = table;
+        this.engines = new SearchEngine[threads];
+        for (int i = 0; i < threads; i++) {
+            engines[i] = new SearchEngine(table);
+        }
+        // Daemon threads, so an idle pool never keeps the program alive
+        this.helpers = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Searches the position for the given color and returns the best move found (0 if there is no legal move).
+    // The board itself is never changed; every thread works on its own copy.
+    public int search(Board board, int color, long timeMillis, int maxDepth) {
+        long start = System.nanoTime();
+        table.newSearch();
+
+        Future<?>[] running = new Future<?>[engines.length - 1];
+        for (int i = 1; i < engines.length; i++) {
+            SearchEngine helper = engines[i];
+            Board copy = board.copy();
+            int firstDepth = 1 + (i & 1);
+            running[i - 1] = helpers.submit(() -> helper.searchFrom(copy, color, timeMillis, maxDepth, firstDepth));
+        }
+
+        int move = engines[0].searchFrom(board.copy(), color, timeMillis, maxDepth, 1);
+
+        // The main thread is done, so the helpers' work is no longer needed
+        for (int i = 1; i < engines.length; i++) {
+            engines[i].stop();
+        }
+        nodes = engines[0].getNodes();
+        for (int i = 1; i < engines.length; i++) {
+            try {
+                running[i - 1].get();
+            } catch (Exception e) {
+                throw new IllegalStateException("Search thread failed", e);
+            }
+            nodes += engines[i].getNodes();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return move;
+    }
+
+    // Lets every thread look positions with few pieces up in the tablebase
+    public void setTablebase(Tablebase tablebase) {
+        for (SearchEngine engine : engines) {
+            engine.setTablebase(tablebase);
+        }
+    }
+
+    // Releases the helper threads.
+    public void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+        }
+    }
+
+    public int getThreads() {
+        return engines.length;
+    }
+
+    public int getBestScore() {
+        return engines[0].getBestScore();
+    }
+
+    public int getDepthReached() {
+        return engines[0].getDepthReached();
+    }
+
+    // Nodes searched by all threads together
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000L / elapsedNanos;
+    }
+
+    TranspositionTable getTable() {
+        return table;
+    }
+}
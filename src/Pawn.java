@@ -2,28 +2,37 @@ class Pawn extends Piece {
     private boolean hasMoved = false;
 
     public Pawn(String color) {
-        super(color);
-        this.moveStrategy = new PawnMoveStrategy();
+        super(color, Position.PAWN);
+        this.moveStrategy = PawnMoveStrategy.INSTANCE;
     }
 
+    @Override
     public boolean hasMoved() {
         return hasMoved;
     }
 
+    @Override
     public void setMoved(boolean moved) {
         this.hasMoved = moved;
     }
 
     @Override
-    public String getSymbol() {
-        return color.equals("white") ? "P" : "p";
+    public Piece copy() {
+        Pawn copy = new Pawn(color);
+        copy.setMoved(hasMoved);
+        return copy;
     }
 }
 
 class PawnMoveStrategy implements MoveStrategy {
+    static final PawnMoveStrategy INSTANCE = new PawnMoveStrategy();
+
+    private PawnMoveStrategy() {
+    }
+
     @Override
     public boolean isMoveValid(int startX, int startY, int endX, int endY, Board board) {
-        boolean isWhite = board.getPiece(startX, startY).getColor().equals("white");
+        boolean isWhite = board.getPiece(startX, startY).getColorIndex() == Position.WHITE;
         int direction = isWhite ? -1 : 1; // White moves up, black moves down
         Piece target = board.getPiece(endX, endY);
 
@@ -31,15 +40,19 @@ class PawnMoveStrategy implements MoveStrategy {
         if (startY == endY && target == null) {
             boolean move = startX + direction == endX;
 
-            // Check for the starting move of the pawns
+            // Check for the starting move of the pawns, which can't jump over a piece
             if(startX == 1 && !isWhite || startX == 6 && isWhite) {
-                move = move || startX + (direction * 2) == endX;
+                move = move || startX + (direction * 2) == endX && board.getPiece(startX + direction, startY) == null;
             }
             return move;
 
         // Check for capturing diagonally
-        } else if (Math.abs(startY - endY) == 1 && startX + direction == endX && target != null && !target.getColor().equals(board.getPiece(startX, startY).getColor())) {
+        } else if (Math.abs(startY - endY) == 1 && startX + direction == endX && target != null && target.getColorIndex() != board.getPiece(startX, startY).getColorIndex()) {
             return true;
+
+        // Check for capturing en passant: the pawn beside it just skipped the end square with a double step
+        } else if (Math.abs(startY - endY) == 1 && startX + direction == endX && target == null) {
+            return Position.square(endX, endY) == board.getPosition().getEpSquare() && startX == (isWhite ? 3 : 4);
         }
         return false;
     }
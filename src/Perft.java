@@ -0,0 +1,126 @@
+import java.io.PrintStream;
+
+// Perft ("performance test") counts every sequence of legal moves to a fixed depth.
+// The counts are known for standard positions, so they show right away when a rule change breaks
+// move generation, and the time it takes shows when it got slower.
+// Usage:
+//   java Perft                 checks the reference positions against their known counts
+//   java Perft <depth>         counts the start position to the given depth
+//   java Perft <depth> divide  same, listing the count below each first move
+//   add --fen "<position>" to count another position instead of the start position
+public class Perft {
+    // Reference counts for the start position, indexed by depth
+    private static final long[] START_POSITION = {1, 20, 400, 8902, 197281, 4865609};
+    // "Kiwipete": castling both ways for both sides, en passant, promotions and pins close together
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final long[] KIWIPETE_COUNTS = {1, 48, 2039, 97862, 4085603};
+    // An endgame where en passant captures expose the own king along the row
+    private static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+    private static final long[] ENDGAME_COUNTS = {1, 14, 191, 2812, 43238, 674624};
+
+    private final Board board;
+    private final MoveList[] moveLists = new MoveList[SearchEngine.MAX_PLY];
+
+    // Counts moves on the given board (any position, not only the start position).
+    public Perft(Board board) {
+        this.board = board;
+        for (int i = 0; i < moveLists.length; i++) {
+            moveLists[i] = new MoveList();
+        }
+    }
+
+    // Number of move sequences of the given length, with the given color to move first
+    public long count(int color, int depth) {
+        if (depth == 0) return 1;
+        MoveList moves = moveLists[depth];
+        MoveGenerator.generateLegal(board, color, moves);
+        if (depth == 1) return moves.size(); // No need to make the last moves just to count them
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            board.makeMove(moves.get(i));
+            nodes += count(color ^ 1, depth - 1);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    // Same as count, printing how many sequences start with each first move
+    public long divide(int color, int depth, PrintStream out) {
+        MoveList moves = new MoveList(); // Not one of moveLists, count() reuses those
+        MoveGenerator.generateLegal(board, color, moves);
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            board.makeMove(moves.get(i));
+            long below = count(color ^ 1, depth - 1);
+            board.unmakeMove();
+            out.println(Move.toString(moves.get(i)) + ": " + below);
+            nodes += below;
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) {
+        Board board = new Board();
+        Fen fen = new Fen();
+        fen.load(Fen.START, board);
+        int argCount = args.length;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--fen")) {
+                fen.load(args[i + 1], board);
+                argCount = i;
+            }
+        }
+        int color = Position.colorIndex(fen.getSideToMove());
+        Perft perft = new Perft(board);
+
+        if (args.length == 0) {
+            boolean passed = checkAll(perft, "start", Position.WHITE, START_POSITION);
+            fen.load(KIWIPETE, board);
+            passed &= checkAll(perft, "kiwipete", Position.WHITE, KIWIPETE_COUNTS);
+            fen.load(ENDGAME, board);
+            passed &= checkAll(perft, "endgame", Position.WHITE, ENDGAME_COUNTS);
+            System.out.println(passed ? "All counts match." : "Some counts don't match!");
+            if (!passed) System.exit(1);
+            return;
+        }
+
+        if (argCount == 0) {
+            System.out.println("Usage: java Perft <depth> [divide] --fen \"<position>\"");
+            return;
+        }
+        int depth = Integer.parseInt(args[0]);
+        long startTime = System.nanoTime();
+        long nodes = argCount > 1 && args[1].equalsIgnoreCase("divide")
+                ? perft.divide(color, depth, System.out)
+                : perft.count(color, depth);
+        report(depth, nodes, System.nanoTime() - startTime);
+    }
+
+    // Counts the position on the perft's board to every depth it has a reference count for
+    private static boolean checkAll(Perft perft, String name, int color, long[] expected) {
+        boolean passed = true;
+        for (int depth = 1; depth < expected.length; depth++) {
+            passed &= check(perft, name, color, depth, expected[depth]);
+        }
+        return passed;
+    }
+
+    // Counts one position and compares it with the expected count
+    private static boolean check(Perft perft, String name, int color, int depth, long expected) {
+        long startTime = System.nanoTime();
+        long nodes = perft.count(color, depth);
+        long elapsed = System.nanoTime() - startTime;
+        System.out.print(name + " ");
+        report(depth, nodes, elapsed);
+        if (nodes != expected) {
+            System.out.println("  FAILED: expected " + expected);
+            return false;
+        }
+        return true;
+    }
+
+    private static void report(int depth, long nodes, long elapsedNanos) {
+        System.out.printf("depth %d: %d nodes in %.3f s (%.0f nodes/s)%n",
+                depth, nodes, elapsedNanos / 1e9, nodes * 1e9 / Math.max(elapsedNanos, 1));
+    }
+}
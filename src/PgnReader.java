@@ -0,0 +1,122 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Splits a PGN file into games without reading it into memory. The file is memory-mapped one window
+// at a time, and each call to next() hands out the games that lie completely inside the current window
+// as offsets into it. A game cut off by the end of a window starts the next window, so windows can be
+// much smaller than the file (PGN archives are often many gigabytes).
+class PgnReader implements Closeable {
+    static final int DEFAULT_WINDOW = 1 << 28; // 256 MB
+
+    // The games found by one call to next(): game i is the bytes from starts[i] up to ends[i] of buffer
+    static class Batch {
+        MappedByteBuffer buffer;
+        int[] starts = new int[1024];
+        int[] ends = new int[1024];
+        int size;
+        long firstGame; // Number of the first game in the batch, counting from 0 in the file
+        long fileOffset; // Where the buffer starts in the file
+
+        private void add(int start, int end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    private long offset; // Where the next window starts
+    private long gamesRead;
+
+    public PgnReader(Path file) throws IOException {
+        this(file, DEFAULT_WINDOW);
+    }
+
+    public PgnReader(Path file, int windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    // Maps the next window and fills the batch with its complete games.
+    // Returns false when the whole file has been read.
+    public boolean next(Batch batch) throws IOException {
+        batch.size = 0;
+        batch.firstGame = gamesRead;
+        batch.fileOffset = offset;
+        if (offset >= fileSize) return false;
+
+        int length = (int) Math.min(windowSize, fileSize - offset);
+        boolean last = offset + length == fileSize;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        batch.buffer = buffer;
+
+        // A game is its tag lines followed by its moves; a tag line after moves starts the next game
+        int gameStart = -1;
+        boolean inMoves = false;
+        boolean inComment = false; // Inside a { comment }, where a '[' doesn't start a tag
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && buffer.get(lineEnd) != '\n') lineEnd++;
+            if (lineEnd == length && !last) break; // The line goes on in the next window
+
+            int first = firstNonBlank(buffer, lineStart, lineEnd);
+            if (first < lineEnd) {
+                if (buffer.get(first) == '[' && !inComment) {
+                    if (inMoves) {
+                        batch.add(gameStart, lineStart);
+                        gameStart = -1;
+                        inMoves = false;
+                    }
+                } else {
+                    inMoves = true;
+                    for (int i = first; i < lineEnd; i++) {
+                        byte b = buffer.get(i);
+                        if (b == '{') inComment = true;
+                        else if (b == '}') inComment = false;
+                    }
+                }
+                if (gameStart < 0) gameStart = lineStart;
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (last) {
+            if (gameStart >= 0) batch.add(gameStart, length);
+            offset = fileSize;
+        } else {
+            // Whatever follows the last complete game is read again with the next window
+            int end = gameStart >= 0 ? gameStart : Math.min(lineStart, length);
+            if (end == 0) throw new IOException("A game at byte " + offset + " is longer than the window");
+            offset += end;
+        }
+        gamesRead += batch.size;
+        return true;
+    }
+
+    private static int firstNonBlank(MappedByteBuffer buffer, int from, int to) {
+        while (from < to) {
+            byte b = buffer.get(from);
+            if (b != ' ' && b != '\t' && b != '\r') break;
+            from++;
+        }
+        return from;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
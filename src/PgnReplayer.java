@@ -0,0 +1,310 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Replays PGN games on its own board and checks every move with the same rules a player's move goes
+// through: the piece's canMove and whether the move leaves the own king in check.
+// Moves are read in standard algebraic notation (SAN, e.g. "Nbd7", "exd5", "e8=Q+", "O-O") straight
+// from the bytes of the game, so replaying a legal game allocates nothing but the pieces it sets up.
+// Not thread-safe: use one replayer per thread.
+class PgnReplayer {
+    // How a game ended according to its Result tag or the result at the end of its moves
+    static final int WHITE_WINS = 0;
+    static final int BLACK_WINS = 1;
+    static final int DRAW = 2;
+    static final int UNKNOWN = 3;
+
+    private static final String PIECE_LETTERS = "PNBRQK"; // Indexed by piece type
+
+    private final Board board = new Board();
+    private final Fen fen = new Fen();
+
+    // What the last replay found
+    private int plies; // Moves played (by either side) before the game ended or a move was illegal
+    private int result;
+    private GameStatus finalStatus;
+    private String illegalMove; // The move that couldn't be played, or null if every move was legal
+    private String illegalReason;
+
+    // Position hash (for the side to move) and move of the first plies of the last replay, if asked for
+    private long[] recordedHashes = new long[0];
+    private int[] recordedMoves = new int[0];
+
+    // Internal state of the current replay
+    private String fenTag;
+    private boolean started;
+    private int color;
+
+    // Replays the game stored in the bytes from start up to end of the buffer.
+    // Returns false if a move is illegal (or can't be read); illegalMove() then says which one.
+    public boolean replay(ByteBuffer buffer, int start, int end) {
+        plies = 0;
+        result = UNKNOWN;
+        finalStatus = GameStatus.ACTIVE;
+        illegalMove = null;
+        illegalReason = null;
+        fenTag = null;
+        started = false;
+
+        int i = start;
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ')') {
+                i++;
+            } else if (b == '[') {
+                i = readTag(buffer, i, end);
+            } else if (b == '{') {
+                i = skipPast(buffer, i, end, (byte) '}');
+            } else if (b == ';' || b == '%') {
+                i = skipPast(buffer, i, end, (byte) '\n');
+            } else if (b == '(') {
+                i = skipVariation(buffer, i, end);
+            } else {
+                int tokenEnd = i;
+                while (tokenEnd < end && !endsToken(buffer.get(tokenEnd))) tokenEnd++;
+                if (!readToken(buffer, i, tokenEnd)) return false;
+                i = tokenEnd;
+            }
+        }
+
+        startIfNeeded();
+        String side = color == Position.WHITE ? "white" : "black";
+        if (!board.hasLegalMove(side)) {
+            finalStatus = board.isKingInCheck(color) ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+        }
+        return true;
+    }
+
+    public int plies() {
+        return plies;
+    }
+
+    // Makes every replay remember the position and move of its first plies (e.g. to build an opening book)
+    public void recordPlies(int count) {
+        recordedHashes = new long[count];
+        recordedMoves = new int[count];
+    }
+
+    // Number of plies remembered by the last replay: all legal moves up to the recorded count
+    public int recordedPlies() {
+        return Math.min(plies, recordedMoves.length);
+    }
+
+    // Hash of the position before the given ply, as Board.getHash gives it for the side to move
+    public long recordedHash(int ply) {
+        return recordedHashes[ply];
+    }
+
+    public int recordedMove(int ply) {
+        return recordedMoves[ply];
+    }
+
+    // WHITE_WINS, BLACK_WINS, DRAW or UNKNOWN, as the game itself claims
+    public int result() {
+        return result;
+    }
+
+    // Checkmate or stalemate if the rules engine sees one after the last move, ACTIVE otherwise
+    public GameStatus finalStatus() {
+        return finalStatus;
+    }
+
+    public String illegalMove() {
+        return illegalMove;
+    }
+
+    public String illegalReason() {
+        return illegalReason;
+    }
+
+    // Reads a tag pair like [Result "1-0"] and returns the index after it
+    private int readTag(ByteBuffer buffer, int i, int end) {
+        int nameStart = i + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < end && buffer.get(nameEnd) != ' ' && buffer.get(nameEnd) != ']') nameEnd++;
+        int valueStart = nameEnd;
+        while (valueStart < end && buffer.get(valueStart) != '"' && buffer.get(valueStart) != ']') valueStart++;
+        int valueEnd = valueStart + 1;
+        while (valueEnd < end && buffer.get(valueEnd) != '"') valueEnd++;
+        if (valueStart < end && buffer.get(valueStart) == '"' && valueEnd < end) {
+            if (matches(buffer, nameStart, nameEnd, "FEN")) {
+                fenTag = text(buffer, valueStart + 1, valueEnd);
+            } else if (matches(buffer, nameStart, nameEnd, "Result")) {
+                readResult(buffer, valueStart + 1, valueEnd);
+            }
+        }
+        return skipPast(buffer, valueEnd, end, (byte) ']');
+    }
+
+    // Handles a move number, a result or a move; returns false if it is a move that can't be played
+    private boolean readToken(ByteBuffer buffer, int start, int end) {
+        if (readResult(buffer, start, end)) return true;
+        byte first = buffer.get(start);
+        if (first == '$') return true; // Annotation glyph, e.g. $1
+        if (first >= '0' && first <= '9' && !isCastling(buffer, start, end)) {
+            // Move number ("12." or "12..."), possibly written together with the move ("12.e4")
+            while (start < end && buffer.get(start) >= '0' && buffer.get(start) <= '9') start++;
+            while (start < end && buffer.get(start) == '.') start++;
+            if (start == end) return true;
+        }
+        startIfNeeded();
+        return playSan(buffer, start, end);
+    }
+
+    private boolean readResult(ByteBuffer buffer, int start, int end) {
+        if (matches(buffer, start, end, "1-0")) result = WHITE_WINS;
+        else if (matches(buffer, start, end, "0-1")) result = BLACK_WINS;
+        else if (matches(buffer, start, end, "1/2-1/2")) result = DRAW;
+        else return matches(buffer, start, end, "*");
+        return true;
+    }
+
+    // Sets up the start position, or the one from the FEN tag, before the first move
+    private void startIfNeeded() {
+        if (started) return;
+        started = true;
+        fen.load(fenTag != null ? fenTag : Fen.START, board);
+        color = Position.colorIndex(fen.getSideToMove());
+    }
+
+    // Finds the one piece the SAN move can mean and plays it
+    private boolean playSan(ByteBuffer buffer, int start, int end) {
+        int sanEnd = end;
+        while (sanEnd > start && "+#!?".indexOf(buffer.get(sanEnd - 1)) >= 0) sanEnd--;
+
+        int type;
+        int to;
+        int fromFile = -1;
+        int fromRank = -1;
+        int promotion = Position.PAWN;
+        if (isCastling(buffer, start, sanEnd)) {
+            // Castling is written as a king move of two squares
+            int row = color == Position.WHITE ? 7 : 0;
+            type = Position.KING;
+            fromFile = 4;
+            to = Position.square(row, sanEnd - start >= 5 ? 2 : 6);
+        } else {
+            int first = buffer.get(start) == 'P' ? start + 1 : start; // Pawn moves may name the pawn, e.g. "Pe4"
+            if (sanEnd - first >= 2 && buffer.get(sanEnd - 2) == '=') {
+                promotion = PIECE_LETTERS.indexOf(Character.toUpperCase(buffer.get(sanEnd - 1)));
+                sanEnd -= 2;
+            } else if (sanEnd - first >= 3 && "NBRQ".indexOf(buffer.get(sanEnd - 1)) >= 0
+                    && buffer.get(first) >= 'a' && buffer.get(first) <= 'h') {
+                promotion = PIECE_LETTERS.indexOf(buffer.get(sanEnd - 1)); // Written without '=', e.g. "e8Q"
+                sanEnd--;
+            }
+            if (sanEnd - first < 2 || promotion < 0 || promotion == Position.KING) {
+                return illegal(buffer, start, end, "can't read the move");
+            }
+            int file = buffer.get(sanEnd - 2) - 'a';
+            int rank = buffer.get(sanEnd - 1) - '1';
+            if (file < 0 || file > 7 || rank < 0 || rank > 7) return illegal(buffer, start, end, "can't read the move");
+            to = Position.square(7 - rank, file);
+
+            int letter = first == start ? PIECE_LETTERS.indexOf(buffer.get(start)) : -1;
+            type = letter > 0 ? letter : Position.PAWN;
+            int i = letter > 0 ? start + 1 : first;
+            boolean capture = false;
+            for (; i < sanEnd - 2; i++) {
+                byte b = buffer.get(i);
+                if (b >= 'a' && b <= 'h') fromFile = b - 'a';
+                else if (b >= '1' && b <= '8') fromRank = b - '1';
+                else if (b == 'x' || b == ':') capture = true;
+                else if (b != '-') return illegal(buffer, start, end, "can't read the move");
+            }
+            if (type == Position.PAWN && fromFile < 0) {
+                // "d5" is only ever a push; a capture names the pawn's file ("exd5")
+                if (capture) return illegal(buffer, start, end, "a pawn capture must name the pawn's file");
+                fromFile = file;
+            }
+        }
+
+        int toX = to >>> 3;
+        int toY = to & 7;
+        int found = -1;
+        boolean leavesCheck = false;
+        long candidates = board.getPosition().pieces(color, type);
+        while (candidates != 0) {
+            int from = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            int x = from >>> 3;
+            int y = from & 7;
+            if (fromFile >= 0 && y != fromFile || fromRank >= 0 && 7 - x != fromRank) continue;
+            if (!board.getPiece(x, y).canMove(x, y, toX, toY, board)) continue;
+            if (board.leavesKingInCheck(board.moveFor(from, to, Position.PAWN), color)) {
+                leavesCheck = true;
+                continue;
+            }
+            if (found >= 0) return illegal(buffer, start, end, "more than one piece can make this move");
+            found = from;
+        }
+        if (found < 0) {
+            return illegal(buffer, start, end, leavesCheck ? "the king would be in check" : "no piece can make this move");
+        }
+
+        boolean lastRow = toX == (color == Position.WHITE ? 0 : 7);
+        if (type == Position.PAWN && lastRow) {
+            if (promotion == Position.PAWN) return illegal(buffer, start, end, "a pawn reaching the last row must name its new piece");
+        } else if (promotion != Position.PAWN) {
+            return illegal(buffer, start, end, "only a pawn reaching the last row can promote");
+        }
+        int move = board.moveFor(found, to, promotion);
+        if (plies < recordedMoves.length) {
+            recordedHashes[plies] = Zobrist.withSideToMove(board.getPosition().hash(), color);
+            recordedMoves[plies] = move;
+        }
+        board.makeMove(move);
+        color ^= 1;
+        plies++;
+        return true;
+    }
+
+    private boolean illegal(ByteBuffer buffer, int start, int end, String reason) {
+        illegalMove = text(buffer, start, end);
+        illegalReason = reason;
+        return false;
+    }
+
+    private static boolean isCastling(ByteBuffer buffer, int start, int end) {
+        byte first = buffer.get(start);
+        return (first == 'O' || first == '0') && end - start >= 3 && buffer.get(start + 1) == '-';
+    }
+
+    private static boolean endsToken(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '{' || b == '(' || b == ';' || b == ')';
+    }
+
+    private static int skipPast(ByteBuffer buffer, int i, int end, byte until) {
+        while (i < end && buffer.get(i) != until) i++;
+        return i + 1;
+    }
+
+    // Skips a variation, which may hold further variations and comments
+    private static int skipVariation(ByteBuffer buffer, int i, int end) {
+        int depth = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '{') {
+                i = skipPast(buffer, i, end, (byte) '}') - 1;
+            } else if (b == '(') {
+                depth++;
+            } else if (b == ')' && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, int end, String text) {
+        if (end - start != text.length()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer.get(start + i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String text(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = buffer.get(start + i);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Re-validates archives of PGN games against the rules engine. The file is read window by window
+// (see PgnReader) and the games of each window are replayed on a fork-join pool, where every worker
+// thread has its own PgnReplayer and so its own board. Reports every illegal move (up to a limit),
+// the results the games claim, the checkmates and stalemates the engine sees at their end,
+// and games/second.
+// Usage: java PgnValidator <file.pgn> [threads]
+public class PgnValidator {
+    private static final int MAX_REPORTED = 50; // Illegal moves printed in detail; all are counted
+    private static final int GAMES_PER_TASK = 64; // Below this a task replays its games instead of splitting
+
+    private static final ThreadLocal<PgnReplayer> REPLAYERS = ThreadLocal.withInitial(PgnReplayer::new);
+
+    private final ForkJoinPool pool;
+    private final LongAdder games = new LongAdder();
+    private final LongAdder plies = new LongAdder();
+    private final LongAdder illegalGames = new LongAdder();
+    private final LongAdder[] results = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+    private final LongAdder checkmates = new LongAdder();
+    private final LongAdder stalemates = new LongAdder();
+    private final ConcurrentLinkedQueue<Report> reports = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger reported = new AtomicInteger();
+
+    // One illegal move, with where to find it
+    private static class Report implements Comparable<Report> {
+        final long game;
+        final int ply;
+        final String move;
+        final String reason;
+
+        Report(long game, int ply, String move, String reason) {
+            this.game = game;
+            this.ply = ply;
+            this.move = move;
+            this.reason = reason;
+        }
+
+        @Override
+        public int compareTo(Report other) {
+            return Long.compare(game, other.game);
+        }
+
+        @Override
+        public String toString() {
+            String moveNumber = (ply / 2 + 1) + (ply % 2 == 0 ? "." : "...");
+            return "game " + (game + 1) + ", move " + moveNumber + " " + move + ": " + reason;
+        }
+    }
+
+    public PgnValidator(int threads) {
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java PgnValidator <file.pgn> [threads]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        PgnValidator validator = new PgnValidator(threads);
+        long start = System.nanoTime();
+        validator.validate(Paths.get(args[0]));
+        long elapsed = System.nanoTime() - start;
+        validator.printSummary(elapsed);
+        validator.shutdown();
+    }
+
+    // Replays every game in the file; returns once all of them are done
+    public void validate(Path file) throws IOException {
+        try (PgnReader reader = new PgnReader(file)) {
+            PgnReader.Batch batch = new PgnReader.Batch();
+            while (reader.next(batch)) {
+                pool.invoke(new ReplayTask(batch, 0, batch.size));
+            }
+        }
+    }
+
+    // Replays a range of a batch's games, splitting it in halves while it is large
+    private class ReplayTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PgnReader.Batch batch;
+        private final int from;
+        private final int to;
+
+        ReplayTask(PgnReader.Batch batch, int from, int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > GAMES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ReplayTask(batch, from, middle), new ReplayTask(batch, middle, to));
+                return;
+            }
+            PgnReplayer replayer = REPLAYERS.get();
+            for (int i = from; i < to; i++) {
+                boolean legal = replayer.replay(batch.buffer, batch.starts[i], batch.ends[i]);
+                record(batch.firstGame + i, replayer, legal);
+            }
+        }
+    }
+
+    private void record(long game, PgnReplayer replayer, boolean legal) {
+        games.increment();
+        plies.add(replayer.plies());
+        results[replayer.result()].increment();
+        if (!legal) {
+            illegalGames.increment();
+            if (reported.getAndIncrement() < MAX_REPORTED) {
+                reports.add(new Report(game, replayer.plies(), replayer.illegalMove(), replayer.illegalReason()));
+            }
+        } else if (replayer.finalStatus() == GameStatus.CHECKMATE) {
+            checkmates.increment();
+        } else if (replayer.finalStatus() == GameStatus.STALEMATE) {
+            stalemates.increment();
+        }
+    }
+
+    public long getGames() {
+        return games.sum();
+    }
+
+    public long getIllegalGames() {
+        return illegalGames.sum();
+    }
+
+    public void printSummary(long elapsedNanos) {
+        List<Report> sorted = new ArrayList<>(reports);
+        Collections.sort(sorted);
+        for (Report report : sorted) {
+            System.out.println(report);
+        }
+        if (illegalGames.sum() > sorted.size()) {
+            System.out.println("(" + (illegalGames.sum() - sorted.size()) + " more illegal moves not listed)");
+        }
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%d games, %d moves in %.2f s (%.0f games/s, %.0f moves/s)%n",
+                games.sum(), plies.sum(), seconds, games.sum() / seconds, plies.sum() / seconds);
+        System.out.println("Games with an illegal move: " + illegalGames.sum());
+        System.out.println("Results: 1-0 " + results[PgnReplayer.WHITE_WINS].sum()
+                + ", 0-1 " + results[PgnReplayer.BLACK_WINS].sum()
+                + ", 1/2-1/2 " + results[PgnReplayer.DRAW].sum()
+                + ", unknown " + results[PgnReplayer.UNKNOWN].sum());
+        System.out.println("Ending in checkmate: " + checkmates.sum() + ", in stalemate: " + stalemates.sum());
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -15,32 +15,100 @@ class PieceFactory {
             default: throw new IllegalArgumentException("Unknown piece type: " + type);
         }
     }
+
+    // Turns a piece name like "queen" into the type index used by Position
+    public static int typeIndex(String type) {
+        switch (type.toLowerCase()) {
+            case "pawn": return Position.PAWN;
+            case "rook": return Position.ROOK;
+            case "knight": return Position.KNIGHT;
+            case "bishop": return Position.BISHOP;
+            case "queen": return Position.QUEEN;
+            case "king": return Position.KING;
+            default: throw new IllegalArgumentException("Unknown piece type: " + type);
+        }
+    }
+
+    // Creates a new piece based on the type index used by Position
+    public static Piece createPiece(int type, String color) {
+        switch (type) {
+            case Position.PAWN: return new Pawn(color);
+            case Position.ROOK: return new Rook(color);
+            case Position.KNIGHT: return new Knight(color);
+            case Position.BISHOP: return new Bishop(color);
+            case Position.QUEEN: return new Queen(color);
+            case Position.KING: return new King(color);
+            default: throw new IllegalArgumentException("Unknown piece type: " + type);
+        }
+    }
 }
 
 // Abstract base class for chess pieces
 abstract class Piece {
+    // Symbols indexed by piece code: upper case for white, lower case for black
+    private static final String[] SYMBOLS = {"P", "N", "B", "R", "Q", "K", null, null, "p", "n", "b", "r", "q", "k"};
+
     protected String color;
+    protected final int colorIndex; // Position.WHITE or Position.BLACK, so the board doesn't compare strings
+    protected final byte code; // Color and type in one byte, see code(color, type)
     protected MoveStrategy moveStrategy; // Behavioral Pattern: Strategy Pattern
 
-    public Piece(String color) {
+    public Piece(String color, int type) {
         this.color = color;
+        this.colorIndex = Position.colorIndex(color);
+        this.code = code(colorIndex, type);
+    }
+
+    // Packs a color and piece type into one byte: the color in bit 3, the type in bits 0-2
+    static byte code(int color, int type) {
+        return (byte) (color << 3 | type);
     }
 
     public String getColor() {
         return color;
     }
 
-    public abstract String getSymbol();
+    public int getColorIndex() {
+        return colorIndex;
+    }
+
+    // The piece's color and type packed as by code(color, type)
+    public byte getCode() {
+        return code;
+    }
+
+    public String getSymbol() {
+        return SYMBOLS[code];
+    }
+
+    // The piece type index used by Position (Position.PAWN, Position.KING, ...)
+    public int getType() {
+        return code & 7;
+    }
+
+    // Whether the piece has moved during the game. Only kings, rooks and pawns keep track of it.
+    public boolean hasMoved() {
+        return false;
+    }
+
+    public void setMoved(boolean moved) {
+    }
+
+    // Creates an independent copy of this piece, used when copying a board
+    public Piece copy() {
+        return PieceFactory.createPiece(getType(), color);
+    }
 
     // Checks if the move is valid for the piece
     public boolean canMove(int startX, int startY, int endX, int endY, Board board) {
+        if (Metrics.isEnabled()) Metrics.CAN_MOVE.increment();
 
         // Check out of bounds for all calls
         if (endX < 0 || endX >= 8 || endY < 0 || endY >= 8) return false;
         Piece target = board.getPiece(endX, endY);
         
         // Protect against capturing your own piece
-        if (target != null && target.getColor().equals(this.color)) return false;
+        if (target != null && target.colorIndex == this.colorIndex) return false;
         return moveStrategy.isMoveValid(startX, startY, endX, endY, board);
     }
 }
@@ -0,0 +1,6 @@
+// Strategy for where the next move comes from, so the game loop doesn't care
+// whether a person or the computer is playing a side.
+interface Player {
+    // Returns the next move in the same format a person types it, e.g. "E2 TO E4" or "E7 TO E8 QUEEN".
+    String nextMove(ChessGameFacade game);
+}
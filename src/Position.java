@@ -0,0 +1,265 @@
+import java.util.Arrays;
+
+// Bitboard representation of the pieces on the board.
+// Every square is one bit of a long: bit (x * 8 + y) is the square at row x, column y,
+// using the same coordinates as Board (row 0 is rank 8, column 0 is file A).
+// There is one long per piece type and color, plus occupancy masks for each color and for the whole board.
+class Position {
+    // Color indexes
+    static final int WHITE = 0;
+    static final int BLACK = 1;
+
+    // Piece type indexes
+    static final int PAWN = 0;
+    static final int KNIGHT = 1;
+    static final int BISHOP = 2;
+    static final int ROOK = 3;
+    static final int QUEEN = 4;
+    static final int KING = 5;
+
+    private final long[] pieces = new long[12]; // One bitboard per color and piece type (color * 6 + type).
+    private final long[] occupancy = new long[2]; // All squares taken by each color.
+    private long occupied; // All squares taken by any piece.
+    private long hash; // Zobrist hash of the pieces, updated with every add and remove.
+
+    // Squares attacked by each color. They are only rebuilt when asked for after the pieces changed,
+    // so a burst of setPiece calls costs nothing until the next check test.
+    private final long[] attacks = new long[2];
+    private final boolean[] attacksValid = new boolean[2];
+
+    // Castling rights, one bit each; a right is lost when the king or that rook moves (or the rook is captured)
+    static final int WHITE_KING_SIDE = 1;
+    static final int WHITE_QUEEN_SIDE = 2;
+    static final int BLACK_KING_SIDE = 4;
+    static final int BLACK_QUEEN_SIDE = 8;
+    // Rights kept when a piece moves from or to each square: moving the king or a rook (or capturing
+    // a rook in its corner) clears the rights that depend on it
+    private static final int[] CASTLING_KEPT = new int[64];
+    // Squares between king and rook that must be empty, and squares the king passes that must not be attacked
+    private static final long[] CASTLING_EMPTY = new long[16];
+    private static final int[] CASTLING_PASSED = new int[16];
+
+    static {
+        Arrays.fill(CASTLING_KEPT, 15);
+        CASTLING_KEPT[square(7, 4)] = ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE) & 15;
+        CASTLING_KEPT[square(7, 7)] = ~WHITE_KING_SIDE & 15;
+        CASTLING_KEPT[square(7, 0)] = ~WHITE_QUEEN_SIDE & 15;
+        CASTLING_KEPT[square(0, 4)] = ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE) & 15;
+        CASTLING_KEPT[square(0, 7)] = ~BLACK_KING_SIDE & 15;
+        CASTLING_KEPT[square(0, 0)] = ~BLACK_QUEEN_SIDE & 15;
+        for (int row : new int[]{7, 0}) {
+            int kingSide = row == 7 ? WHITE_KING_SIDE : BLACK_KING_SIDE;
+            int queenSide = row == 7 ? WHITE_QUEEN_SIDE : BLACK_QUEEN_SIDE;
+            CASTLING_EMPTY[kingSide] = 1L << square(row, 5) | 1L << square(row, 6);
+            CASTLING_PASSED[kingSide] = square(row, 5);
+            CASTLING_EMPTY[queenSide] = 1L << square(row, 1) | 1L << square(row, 2) | 1L << square(row, 3);
+            CASTLING_PASSED[queenSide] = square(row, 3);
+        }
+    }
+
+    private int epSquare = -1; // Square a pawn skipped with its last double step, or -1.
+    private int castlingRights;
+
+    // Turns board coordinates into a square index (0 - 63).
+    static int square(int x, int y) {
+        return x * 8 + y;
+    }
+
+    // Turns the color names used by pieces into a color index.
+    static int colorIndex(String color) {
+        return color.equals("white") ? WHITE : BLACK;
+    }
+
+    // Puts a piece on an empty square.
+    void add(int square, int color, int type) {
+        long bit = 1L << square;
+        pieces[color * 6 + type] |= bit;
+        occupancy[color] |= bit;
+        occupied |= bit;
+        hash ^= Zobrist.pieceKey(color, type, square);
+        invalidateAttacks();
+    }
+
+    // Takes a piece off a square.
+    void remove(int square, int color, int type) {
+        long bit = ~(1L << square);
+        pieces[color * 6 + type] &= bit;
+        occupancy[color] &= bit;
+        occupied &= bit;
+        hash ^= Zobrist.pieceKey(color, type, square);
+        invalidateAttacks();
+    }
+
+    // Squares taken by pieces of the given color and type.
+    long pieces(int color, int type) {
+        return pieces[color * 6 + type];
+    }
+
+    // Squares taken by pieces of the given color.
+    long occupancy(int color) {
+        return occupancy[color];
+    }
+
+    // Squares taken by any piece.
+    long occupied() {
+        return occupied;
+    }
+
+    // Zobrist hash of the pieces, castling rights and en passant square (the side to move is added by Zobrist.withSideToMove).
+    long hash() {
+        return hash;
+    }
+
+    // Square of the king of the given color, or -1 if there is none on the board.
+    int kingSquare(int color) {
+        long king = pieces[color * 6 + KING];
+        return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
+    }
+
+    // All squares the pieces of the given color attack (a pawn only attacks diagonally).
+    long attacks(int color) {
+        if (!attacksValid[color]) {
+            attacks[color] = computeAttacks(color);
+            attacksValid[color] = true;
+        }
+        return attacks[color];
+    }
+
+    // Checks if a square is attacked by the given color.
+    // Uses the attack map when it is up to date, otherwise looks outwards from the square,
+    // which is much cheaper than rebuilding the map for a single question.
+    boolean isAttacked(int square, int byColor) {
+        if (attacksValid[byColor]) {
+            return (attacks[byColor] & (1L << square)) != 0;
+        }
+        long rooksAndQueens = pieces(byColor, ROOK) | pieces(byColor, QUEEN);
+        long bishopsAndQueens = pieces(byColor, BISHOP) | pieces(byColor, QUEEN);
+        return (Bitboards.KNIGHT_ATTACKS[square] & pieces(byColor, KNIGHT)) != 0
+                || (Bitboards.PAWN_ATTACKS[byColor ^ 1][square] & pieces(byColor, PAWN)) != 0
+                || (Bitboards.KING_ATTACKS[square] & pieces(byColor, KING)) != 0
+                || (Bitboards.rookAttacks(square, occupied) & rooksAndQueens) != 0
+                || (Bitboards.bishopAttacks(square, occupied) & bishopsAndQueens) != 0;
+    }
+
+    private long computeAttacks(int color) {
+        long result = 0L;
+        long pawns = pieces(color, PAWN);
+        while (pawns != 0) {
+            result |= Bitboards.PAWN_ATTACKS[color][Long.numberOfTrailingZeros(pawns)];
+            pawns &= pawns - 1;
+        }
+        long knights = pieces(color, KNIGHT);
+        while (knights != 0) {
+            result |= Bitboards.KNIGHT_ATTACKS[Long.numberOfTrailingZeros(knights)];
+            knights &= knights - 1;
+        }
+        long diagonal = pieces(color, BISHOP) | pieces(color, QUEEN);
+        while (diagonal != 0) {
+            result |= Bitboards.bishopAttacks(Long.numberOfTrailingZeros(diagonal), occupied);
+            diagonal &= diagonal - 1;
+        }
+        long straight = pieces(color, ROOK) | pieces(color, QUEEN);
+        while (straight != 0) {
+            result |= Bitboards.rookAttacks(Long.numberOfTrailingZeros(straight), occupied);
+            straight &= straight - 1;
+        }
+        long kings = pieces(color, KING);
+        while (kings != 0) {
+            result |= Bitboards.KING_ATTACKS[Long.numberOfTrailingZeros(kings)];
+            kings &= kings - 1;
+        }
+        return result;
+    }
+
+    int getEpSquare() {
+        return epSquare;
+    }
+
+    void setEpSquare(int epSquare) {
+        if (this.epSquare >= 0) hash ^= Zobrist.EN_PASSANT[this.epSquare & 7];
+        if (epSquare >= 0) hash ^= Zobrist.EN_PASSANT[epSquare & 7];
+        this.epSquare = epSquare;
+    }
+
+    // Where a pawn of the given color moving from one square to another can be captured en passant,
+    // or -1 if it isn't a double step or no enemy pawn stands ready to capture it.
+    // Recording the square only when it matters keeps hashes of the same position equal.
+    int epSquareAfter(int color, int from, int to) {
+        if (from - to != 16 && to - from != 16) return -1;
+        int skipped = (from + to) >>> 1;
+        return (Bitboards.PAWN_ATTACKS[color][skipped] & pieces(color ^ 1, PAWN)) != 0 ? skipped : -1;
+    }
+
+    int getCastlingRights() {
+        return castlingRights;
+    }
+
+    void setCastlingRights(int rights) {
+        hash ^= Zobrist.CASTLING[castlingRights] ^ Zobrist.CASTLING[rights];
+        castlingRights = rights;
+    }
+
+    // The castling rights left after a move from one square to another
+    int castlingRightsAfter(int from, int to) {
+        return castlingRights & CASTLING_KEPT[from] & CASTLING_KEPT[to];
+    }
+
+    // Checks the given castling right (one of the constants above), that nothing stands between the
+    // king and the rook and that the king is neither in check nor passes an attacked square.
+    // Whether the square the king ends on is attacked is left to the usual check test after the move.
+    boolean canCastle(int right) {
+        if ((castlingRights & right) == 0 || (occupied & CASTLING_EMPTY[right]) != 0) return false;
+        int enemy = right <= WHITE_QUEEN_SIDE ? BLACK : WHITE;
+        int king = (CASTLING_PASSED[right] & ~7) | 4; // Column 4 of the row the king passes through
+        return !isAttacked(king, enemy) && !isAttacked(CASTLING_PASSED[right], enemy);
+    }
+
+    // The attack map of a color as it is cached right now, without rebuilding it.
+    long cachedAttacks(int color) {
+        return attacks[color];
+    }
+
+    boolean isAttackMapValid(int color) {
+        return attacksValid[color];
+    }
+
+    // Puts back attack maps saved before a move, so undoing a move doesn't force a rebuild.
+    void restoreAttacks(long white, boolean whiteValid, long black, boolean blackValid) {
+        attacks[WHITE] = white;
+        attacks[BLACK] = black;
+        attacksValid[WHITE] = whiteValid;
+        attacksValid[BLACK] = blackValid;
+    }
+
+    private void invalidateAttacks() {
+        attacksValid[WHITE] = false;
+        attacksValid[BLACK] = false;
+    }
+
+    // Empties the whole position.
+    void clear() {
+        Arrays.fill(pieces, 0L);
+        occupancy[WHITE] = 0L;
+        occupancy[BLACK] = 0L;
+        occupied = 0L;
+        hash = 0L;
+        epSquare = -1;
+        castlingRights = 0;
+        invalidateAttacks();
+    }
+
+    // Overwrites this position with another one without allocating anything.
+    void copyFrom(Position other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        occupancy[WHITE] = other.occupancy[WHITE];
+        occupancy[BLACK] = other.occupancy[BLACK];
+        occupied = other.occupied;
+        hash = other.hash;
+        epSquare = other.epSquare;
+        castlingRights = other.castlingRights;
+        attacks[WHITE] = other.attacks[WHITE];
+        attacks[BLACK] = other.attacks[BLACK];
+        attacksValid[WHITE] = other.attacksValid[WHITE];
+        attacksValid[BLACK] = other.attacksValid[BLACK];
+    }
+}
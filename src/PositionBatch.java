@@ -0,0 +1,60 @@
+// Many positions stored column by column in primitive arrays, to be analyzed together by BatchAnalyzer.
+// Position i is the i-th entry of every column:
+//   pieces[color * 6 + type][i]  bitboard of that color's pieces of that type (types as in Position,
+//                                square x * 8 + y as in Position, so bit 0 is A8 and bit 63 is H1)
+//   sideToMove[i]                Position.WHITE or Position.BLACK
+//   castlingRights[i]            Position.WHITE_KING_SIDE | ... (rights without their king and rook are dropped)
+//   epSquares[i]                 the square a pawn skipped with its double step, or -1
+// Callers can fill the columns directly (and set size), or add boards and FEN text.
+class PositionBatch {
+    final long[][] pieces = new long[12][];
+    final byte[] sideToMove;
+    final byte[] castlingRights;
+    final byte[] epSquares;
+    int size;
+
+    private Board scratch; // For add(String), made on first use
+    private Fen fen;
+
+    PositionBatch(int capacity) {
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = new long[capacity];
+        }
+        sideToMove = new byte[capacity];
+        castlingRights = new byte[capacity];
+        epSquares = new byte[capacity];
+    }
+
+    int capacity() {
+        return sideToMove.length;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    // Adds the position on the board with the given color to move and returns its index
+    int add(Board board, int color) {
+        if (size == capacity()) throw new IllegalStateException("The batch is full (" + size + " positions)");
+        Position position = board.getPosition();
+        for (int side = Position.WHITE; side <= Position.BLACK; side++) {
+            for (int type = Position.PAWN; type <= Position.KING; type++) {
+                pieces[side * 6 + type][size] = position.pieces(side, type);
+            }
+        }
+        sideToMove[size] = (byte) color;
+        castlingRights[size] = (byte) position.getCastlingRights();
+        epSquares[size] = (byte) position.getEpSquare();
+        return size++;
+    }
+
+    // Adds a position given as FEN text and returns its index
+    int add(String text) {
+        if (scratch == null) {
+            scratch = new Board();
+            fen = new Fen();
+        }
+        fen.load(text, scratch);
+        return add(scratch, Position.colorIndex(fen.getSideToMove()));
+    }
+}
@@ -2,22 +2,21 @@ class Queen extends Piece {
 
     // Constructor to create a Queen piece with the given color
     public Queen(String color) {
-        super(color);
-        this.moveStrategy = new QueenMoveStrategy();
-    }
-
-    @Override
-    public String getSymbol() {
-        // Return the symbol for the Queen ('Q' for white, 'q' for black)
-        return color.equals("white") ? "Q" : "q";
+        super(color, Position.QUEEN);
+        this.moveStrategy = QueenMoveStrategy.INSTANCE;
     }
 }
 
 // Check if the Queen's move is valid
 class QueenMoveStrategy implements MoveStrategy {
+    static final QueenMoveStrategy INSTANCE = new QueenMoveStrategy();
+
+    private QueenMoveStrategy() {
+    }
+
     @Override
     public boolean isMoveValid(int startX, int startY, int endX, int endY, Board board) {
-        return new RookMoveStrategy().isMoveValid(startX, startY, endX, endY, board) ||
-                new BishopMoveStrategy().isMoveValid(startX, startY, endX, endY, board);
+        return RookMoveStrategy.INSTANCE.isMoveValid(startX, startY, endX, endY, board) ||
+                BishopMoveStrategy.INSTANCE.isMoveValid(startX, startY, endX, endY, board);
     }
 }
@@ -5,42 +5,44 @@ class Rook extends Piece {
 
     // Constructor to create a Rook piece with the given color
     public Rook(String color) {
-        super(color);
-        this.moveStrategy = new RookMoveStrategy();
+        super(color, Position.ROOK);
+        this.moveStrategy = RookMoveStrategy.INSTANCE;
     }
 
     // Return whether the Rook has moved
+    @Override
     public boolean hasMoved() {
         return hasMoved;
     }
 
     // Set whether the Rook has moved
+    @Override
     public void setMoved(boolean moved) {
         this.hasMoved = moved;
     }
 
     @Override
-    public String getSymbol() {
-        // Return the symbol for the Rook ('R' for white, 'r' for black)
-        return color.equals("white") ? "R" : "r";
+    public Piece copy() {
+        Rook copy = new Rook(color);
+        copy.setMoved(hasMoved);
+        return copy;
     }
 }
 
 // Check if the Rook's move is valid
 class RookMoveStrategy implements MoveStrategy {
+    static final RookMoveStrategy INSTANCE = new RookMoveStrategy();
+
+    private RookMoveStrategy() {
+    }
+
     @Override
     public boolean isMoveValid(int startX, int startY, int endX, int endY, Board board) {
         // Rooks can only move in straight lines, either horizontally or vertically
         if (startX != endX && startY != endY) return false;
-        int xDir = Integer.compare(endX, startX);
-        int yDir = Integer.compare(endY, startY);
-        
-        // Check if there are any pieces blocking the path
-        for (int i = 1; i < Math.max(Math.abs(endX - startX), Math.abs(endY - startY)); i++) {
-            if (board.getPiece(startX + i * xDir, startY + i * yDir) != null) return false; // Path blocked
-        }
-
-        // Move is valid if the path is clear
-        return true;
+
+        // Move is valid if no piece stands on the squares in between
+        long path = Bitboards.BETWEEN[Position.square(startX, startY)][Position.square(endX, endY)];
+        return (path & board.getPosition().occupied()) == 0;
     }
 }
@@ -0,0 +1,45 @@
+// Measures how the parallel search scales with the number of threads.
+// For 1, 2, 4, ... up to all available cores it reports, per position:
+//  - nodes/second and depth reached in a fixed amount of time
+//  - the time needed to finish a fixed depth
+// Usage: java SearchBenchmark [milliseconds per search] [fixed depth]
+public class SearchBenchmark {
+    // Openings played from the start position to get some realistic positions
+    private static final String[][] OPENINGS = {
+            {},
+            {"E2", "E4", "E7", "E5", "G1", "F3", "B8", "C6", "F1", "C4", "F8", "C5", "C2", "C3", "G8", "F6", "D2", "D3", "D7", "D6"},
+            {"D2", "D4", "G8", "F6", "C2", "C4", "E7", "E6", "B1", "C3", "F8", "B4", "E2", "E3", "E8", "G8", "F1", "D3", "D7", "D5"},
+    };
+
+    public static void main(String[] args) {
+        long timeMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        int fixedDepth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int cores = Runtime.getRuntime().availableProcessors();
+        Board start = new ChessGameFacade().getBoardCopy();
+
+        System.out.printf("%-8s %-9s %14s %7s %16s%n", "threads", "position", "nodes/s", "depth", "ms to depth " + fixedDepth);
+        for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(threads * 2, cores)) {
+            for (int i = 0; i < OPENINGS.length; i++) {
+                Board board = start.copy();
+                for (int j = 0; j < OPENINGS[i].length; j += 2) {
+                    board.makeMove(board.moveFor(Move.parseSquare(OPENINGS[i][j]), Move.parseSquare(OPENINGS[i][j + 1]), Position.PAWN));
+                }
+                int color = OPENINGS[i].length % 4 == 0 ? Position.WHITE : Position.BLACK;
+
+                // A fresh search (and table) per measurement, so earlier runs can't help later ones
+                ParallelSearch timed = new ParallelSearch(threads);
+                timed.search(board, color, timeMillis, SearchEngine.MAX_PLY);
+                long nodesPerSecond = timed.getNodesPerSecond();
+                int depth = timed.getDepthReached();
+                timed.shutdown();
+
+                ParallelSearch fixed = new ParallelSearch(threads);
+                fixed.search(board, color, Long.MAX_VALUE / 2_000_000L, fixedDepth);
+                long millisToDepth = fixed.getElapsedNanos() / 1_000_000L;
+                fixed.shutdown();
+
+                System.out.printf("%-8d %-9d %14d %7d %16d%n", threads, i, nodesPerSecond, depth, millisToDepth);
+            }
+        }
+    }
+}
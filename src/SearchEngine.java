@@ -0,0 +1,294 @@
+// Finds the best move for a side with negamax and alpha-beta pruning.
+// The search deepens one ply at a time until the time budget runs out, so there is always a
+// complete answer from the last finished depth. Results are kept in a transposition table,
+// which also supplies the first move to try at each node.
+class SearchEngine {
+    static final int INFINITY = 32000;
+    static final int MATE = 31000; // Score of giving checkmate right now; mate in n plies scores MATE - n
+    static final int MAX_PLY = 128;
+
+    private final TranspositionTable table;
+    private final MoveList[] moveLists = new MoveList[MAX_PLY]; // One buffer per ply, so searching never allocates
+    private final int[][] orderScores = new int[MAX_PLY][MoveList.MAX_MOVES];
+    private final long[] pathHashes = new long[MAX_PLY]; // Positions on the current line, to spot repetitions
+
+    private Tablebase tablebase; // Exact results for positions with few pieces, or null
+
+    private Board board;
+    private long deadline;
+    private volatile boolean stopped;
+    private long nodes;
+    private int rootMove; // Best move of the iteration in progress
+
+    // Results of the last search
+    private int bestMove;
+    private int bestScore;
+    private int depthReached;
+    private long elapsedNanos;
+
+    public SearchEngine() {
+        this(new TranspositionTable(1 << 20, TranspositionTable.ReplacementPolicy.DEPTH_AND_AGE));
+    }
+
+    public SearchEngine(TranspositionTable table) {
+        this.table = table;
+        for (int i = 0; i < MAX_PLY; i++) {
+            moveLists[i] = new MoveList();
+        }
+    }
+
+    // Looks positions with few enough pieces up in the tablebase instead of searching them
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    // Searches the position for the given color and returns the best move found (0 if there is no legal move).
+    // The board is used as scratch space but is back in its original state when this returns.
+    public int search(Board board, int color, long timeMillis, int maxDepth) {
+        table.newSearch();
+        return searchFrom(board, color, timeMillis, maxDepth, 1);
+    }
+
+    // Same as search, but starts deepening at firstDepth and leaves the table's age alone.
+    // Used by ParallelSearch, where several engines share one table and start at different depths.
+    int searchFrom(Board board, int color, long timeMillis, int maxDepth, int firstDepth) {
+        long start = System.nanoTime();
+        this.board = board;
+        this.deadline = start + timeMillis * 1_000_000L;
+        this.stopped = false;
+        this.nodes = 0;
+        this.bestMove = 0;
+        this.bestScore = 0;
+        this.depthReached = 0;
+
+        for (int depth = firstDepth; depth <= Math.min(maxDepth, MAX_PLY - 1); depth++) {
+            int score = negamax(depth, 0, -INFINITY, INFINITY, color);
+            if (stopped) break; // An unfinished iteration can't be trusted
+            bestMove = rootMove;
+            bestScore = score;
+            depthReached = depth;
+            if (Math.abs(score) > MATE - MAX_PLY) break; // Found a forced mate, deeper won't change it
+        }
+        if (bestMove == 0) {
+            // Not even the first iteration finished in time, fall back to any legal move
+            MoveGenerator.generateLegal(board, color, moveLists[0]);
+            if (moveLists[0].size() > 0) bestMove = moveLists[0].get(0);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return bestMove;
+    }
+
+    // Stops a running search as soon as possible.
+    public void stop() {
+        stopped = true;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public int getDepthReached() {
+        return depthReached;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1_000_000_000L / elapsedNanos;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta, int color) {
+        if ((++nodes & 2047) == 0 && System.nanoTime() > deadline) {
+            stopped = true;
+        }
+        if (stopped) return 0;
+
+        Position position = board.getPosition();
+        long hash = Zobrist.withSideToMove(position.hash(), color);
+        if (ply > 0 && isRepetition(hash, ply)) return 0;
+        pathHashes[ply] = hash;
+
+        if (ply > 0 && tablebase != null && Long.bitCount(position.occupied()) <= tablebase.getMaxPieces()) {
+            int value = tablebase.probe(board, color);
+            if (value != Tablebase.UNKNOWN) return tablebaseScore(value, ply);
+        }
+
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return quiescence(ply, alpha, beta, color);
+        }
+
+        int ttMove = 0;
+        long entry = table.probe(hash);
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || bound == TranspositionTable.LOWER_BOUND && score >= beta
+                        || bound == TranspositionTable.UPPER_BOUND && score <= alpha) {
+                    return score;
+                }
+            }
+        }
+
+        MoveList moves = moveLists[ply];
+        MoveGenerator.generate(board, color, moves);
+        scoreMoves(moves, ply, ttMove, color);
+
+        int originalAlpha = alpha;
+        int best = -INFINITY;
+        int bestHere = 0;
+        int legalMoves = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = nextBest(moves, ply, i);
+            board.makeMove(move);
+            if (isOwnKingAttacked(position, color)) {
+                board.unmakeMove();
+                continue;
+            }
+            legalMoves++;
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha, color ^ 1);
+            board.unmakeMove();
+            if (stopped) return 0;
+
+            if (score > best) {
+                best = score;
+                bestHere = move;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) break; // The opponent will avoid this line
+                }
+            }
+        }
+
+        if (legalMoves == 0) {
+            // Checkmate or stalemate
+            return isOwnKingAttacked(position, color) ? -MATE + ply : 0;
+        }
+        if (ply == 0) {
+            rootMove = bestHere;
+        }
+
+        int bound = best <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                : best >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+        table.store(hash, bestHere, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    // Keeps searching captures only, so the evaluation isn't taken in the middle of an exchange
+    private int quiescence(int ply, int alpha, int beta, int color) {
+        int standPat = Evaluation.evaluate(board, color);
+        if (standPat >= beta || ply >= MAX_PLY - 1) return standPat;
+        if (standPat > alpha) alpha = standPat;
+
+        Position position = board.getPosition();
+        MoveList moves = moveLists[ply];
+        MoveGenerator.generate(board, color, moves);
+        scoreMoves(moves, ply, 0, color);
+        long enemy = position.occupancy(color ^ 1);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = nextBest(moves, ply, i);
+            if ((enemy & (1L << Move.to(move))) == 0 && Move.promotion(move) == Position.PAWN && !Move.isEnPassant(move)) continue;
+            board.makeMove(move);
+            if (isOwnKingAttacked(position, color)) {
+                board.unmakeMove();
+                continue;
+            }
+            nodes++;
+            int score = -quiescence(ply + 1, -beta, -alpha, color ^ 1);
+            board.unmakeMove();
+            if (score >= beta) return score;
+            if (score > alpha) alpha = score;
+        }
+        return alpha;
+    }
+
+    // Gives each move an ordering score: the table move first, then captures of valuable pieces
+    // by cheap ones, then promotions, then everything else
+    private void scoreMoves(MoveList moves, int ply, int ttMove, int color) {
+        long enemy = board.getPosition().occupancy(color ^ 1);
+        int[] scores = orderScores[ply];
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int to = Move.to(move);
+            if (move == ttMove) {
+                scores[i] = 1_000_000;
+            } else if ((enemy & (1L << to)) != 0) {
+                int victim = board.getPiece(to >>> 3, to & 7).getType();
+                int from = Move.from(move);
+                int attacker = board.getPiece(from >>> 3, from & 7).getType();
+                scores[i] = 10_000 + Evaluation.PIECE_VALUES[victim] - attacker;
+            } else if (Move.isEnPassant(move)) {
+                scores[i] = 10_000 + Evaluation.PIECE_VALUES[Position.PAWN] - Position.PAWN; // Pawn takes pawn
+            } else if (Move.promotion(move) != Position.PAWN) {
+                scores[i] = 9_000;
+            } else {
+                scores[i] = 0;
+            }
+        }
+    }
+
+    // Moves the best scored of the remaining moves to position i (a partial selection sort)
+    private int nextBest(MoveList moves, int ply, int i) {
+        int[] scores = orderScores[ply];
+        int best = i;
+        for (int j = i + 1; j < moves.size(); j++) {
+            if (scores[j] > scores[best]) best = j;
+        }
+        if (best != i) {
+            int move = moves.get(best);
+            moves.set(best, moves.get(i));
+            moves.set(i, move);
+            int score = scores[best];
+            scores[best] = scores[i];
+            scores[i] = score;
+        }
+        return moves.get(i);
+    }
+
+    private boolean isOwnKingAttacked(Position position, int color) {
+        int king = position.kingSquare(color);
+        return king >= 0 && position.isAttacked(king, color ^ 1);
+    }
+
+    // A position already on the current line (with the same side to move) is scored as a draw
+    private boolean isRepetition(long hash, int ply) {
+        for (int i = ply - 2; i >= 0; i -= 2) {
+            if (pathHashes[i] == hash) return true;
+        }
+        return false;
+    }
+
+    // A tablebase result scored like the mate a search would find. Mates more than MAX_PLY plies away
+    // fall just below the mate scores, so they aren't treated as mates but still beat any evaluation.
+    private static int tablebaseScore(int value, int ply) {
+        if (!Tablebase.isWin(value) && !Tablebase.isLoss(value)) return 0;
+        int score = MATE - ply - Tablebase.pliesToMate(value);
+        return Tablebase.isWin(value) ? score : -score;
+    }
+
+    // Mate scores are stored relative to the position, not to the root, so they stay correct
+    // when the same position is reached at a different ply
+    private static int toTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) return score + ply;
+        if (score < -MATE + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score > MATE - MAX_PLY) return score - ply;
+        if (score < -MATE + MAX_PLY) return score + ply;
+        return score;
+    }
+}
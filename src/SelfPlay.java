@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Plays complete games against itself without anyone watching, to load-test the rules engine and to
+// make games for tuning the evaluation. Every move goes through ChessGameFacade.makeMove like a
+// player's move; moves are picked at random from the legal moves, or by the search engine at a fixed
+// depth after some random opening moves (so engine games don't all repeat each other).
+// Each worker thread plays its own games, so nothing is shared but the output file and the counters.
+//
+// The output starts with the 8 bytes "CHESSSP1", followed by one record per finished game:
+//   plies   2 bytes, the number of moves played
+//   result  1 byte, one of the result codes below
+//   moves   2 bytes each (start square, end square and promotion, as packed by Move)
+// Games are written in the order they finish, not in the order they were started. Game n uses the
+// random seed seed + n, and the engine starts every game with an empty transposition table, so the
+// same seed plays the same games with any number of threads.
+// Usage: java SelfPlay <output file> <games> [--threads n] [--engine depth] [--random-plies n]
+//                      [--max-plies n] [--seed s]
+//        java SelfPlay --summary <file>   counts the games and results in an output file
+public class SelfPlay {
+    static final long MAGIC = 0x43484553_53535031L; // "CHESSSP1"
+    // Results
+    static final int WHITE_MATES = 0;
+    static final int BLACK_MATES = 1;
+    static final int STALEMATE = 2;
+    static final int REPETITION = 3;
+    static final int FIFTY_MOVES = 4; // A hundred moves without a capture or pawn move; stopped as a draw
+    static final int MAX_PLIES = 5; // Stopped at the ply limit without a result
+    private static final String[] RESULT_NAMES = {"white mates", "black mates", "stalemate", "repetition",
+            "fifty moves", "ply limit"};
+
+    private static final String[] PIECE_NAMES = {"pawn", "knight", "bishop", "rook", "queen", "king"};
+    private static final String[] SQUARE_NAMES = new String[64];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            SQUARE_NAMES[square] = Move.squareName(square);
+        }
+    }
+
+    private final FileChannel out;
+    private final long games;
+    private final int engineDepth; // 0 to play only random moves
+    private final int randomPlies; // Random moves at the start of an engine game
+    private final int maxPlies;
+    private final long seed;
+
+    private final AtomicLong nextGame = new AtomicLong();
+    private final LongAdder plies = new LongAdder();
+    private final LongAdder[] results = new LongAdder[RESULT_NAMES.length];
+
+    SelfPlay(FileChannel out, long games, int engineDepth, int randomPlies, int maxPlies, long seed) {
+        this.out = out;
+        this.games = games;
+        this.engineDepth = engineDepth;
+        this.randomPlies = randomPlies;
+        if (maxPlies < 0) throw new IllegalArgumentException("--max-plies can't be negative: " + maxPlies);
+        this.maxPlies = Math.min(maxPlies, 0xffff);
+        this.seed = seed;
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("--summary")) {
+            summarize(Paths.get(args[1]));
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("Usage: java SelfPlay <output file> <games> [--threads n] [--engine depth]"
+                    + " [--random-plies n] [--max-plies n] [--seed s]");
+            System.out.println("       java SelfPlay --summary <file>");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        long games = Long.parseLong(args[1]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int engineDepth = 0;
+        int randomPlies = 8;
+        int maxPlies = 500;
+        long seed = System.nanoTime();
+        for (int i = 2; i < args.length - 1; i += 2) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--engine": engineDepth = Integer.parseInt(args[i + 1]); break;
+                case "--random-plies": randomPlies = Integer.parseInt(args[i + 1]); break;
+                case "--max-plies": maxPlies = Integer.parseInt(args[i + 1]); break;
+                case "--seed": seed = Long.parseLong(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SelfPlay selfPlay = new SelfPlay(out, games, engineDepth, randomPlies, maxPlies, seed);
+            ByteBuffer header = ByteBuffer.allocate(8).putLong(MAGIC);
+            header.flip();
+            selfPlay.write(header);
+
+            long start = System.nanoTime();
+            selfPlay.run(threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            selfPlay.report(file, threads, seconds);
+        }
+    }
+
+    // Plays all games on the given number of threads and returns when they are written
+    void run(int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = executor.submit(() -> {
+                    new Worker().run();
+                    return null;
+                });
+            }
+            for (Future<?> worker : workers) {
+                worker.get(); // Passes on the first worker's failure
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void report(Path file, int threads, double seconds) {
+        long moves = plies.sum();
+        int cores = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%d games, %d moves in %.2f s written to %s%n", games, moves, seconds, file);
+        System.out.printf("games/second: %.0f (%.0f per core), moves/second: %.0f (%.0f per core) on %d threads%n",
+                games / seconds, games / seconds / cores, moves / seconds, moves / seconds / cores, threads);
+        printResults(results, games, moves);
+    }
+
+    private static void printResults(LongAdder[] results, long games, long moves) {
+        for (int i = 0; i < results.length; i++) {
+            System.out.printf("  %-12s %10d%n", RESULT_NAMES[i], results[i].sum());
+        }
+        System.out.printf("  average length: %.1f plies%n", games == 0 ? 0 : moves / (double) games);
+    }
+
+    // Appends whole game records to the file; workers take turns so records never interleave
+    private void write(ByteBuffer records) throws IOException {
+        synchronized (out) {
+            while (records.hasRemaining()) {
+                out.write(records);
+            }
+        }
+    }
+
+    // One thread's games, played one after another on boards nobody else touches
+    private class Worker {
+        private final ByteBuffer buffer = ByteBuffer.allocate(Math.max(1 << 16, 3 + 2 * maxPlies)); // Room for the longest game
+        private final short[] moves = new short[maxPlies];
+        private int count; // Plies of the game being played
+        private final TranspositionTable table = engineDepth > 0
+                ? new TranspositionTable(1 << 16, TranspositionTable.ReplacementPolicy.DEPTH_AND_AGE)
+                : null;
+        private final SearchEngine engine = table != null ? new SearchEngine(table) : null;
+
+        void run() throws IOException {
+            for (long game = nextGame.getAndIncrement(); game < games; game = nextGame.getAndIncrement()) {
+                int result = play(new SplittableRandom(seed + game));
+                results[result].increment();
+                plies.add(count);
+                if (buffer.remaining() < 3 + 2 * count) flush();
+                buffer.putShort((short) count).put((byte) result);
+                for (int i = 0; i < count; i++) {
+                    buffer.putShort(moves[i]);
+                }
+            }
+            flush();
+        }
+
+        // Plays one game from the start position and returns its result
+        private int play(SplittableRandom random) {
+            ChessGameFacade game = new ChessGameFacade();
+            count = 0;
+            if (table != null) table.clear(); // What earlier games left there would change this game's moves
+            while (game.getStatus() == GameStatus.ACTIVE) {
+                if (count == maxPlies) return MAX_PLIES;
+                if (game.getHalfmoveClock() >= 100) return FIFTY_MOVES;
+                int move = engine != null && count >= randomPlies ? engineMove(game) : randomMove(game, random);
+                int promotion = Move.promotion(move);
+                if (!game.makeMove(SQUARE_NAMES[Move.from(move)], SQUARE_NAMES[Move.to(move)],
+                        promotion == Position.PAWN ? null : PIECE_NAMES[promotion])) {
+                    throw new IllegalStateException("Legal move " + Move.toString(move) + " was rejected: "
+                            + game.getLastError() + " in " + game.getFen());
+                }
+                moves[count++] = (short) (move & 0x7fff); // Without the castling and en passant flags
+            }
+            switch (game.getStatus()) {
+                case CHECKMATE: return game.getCurrentPlayer().equals("white") ? WHITE_MATES : BLACK_MATES; // The winner moved last
+                case STALEMATE: return STALEMATE;
+                default: return REPETITION;
+            }
+        }
+
+        // Every legal move is equally likely, so promotions to each piece are too
+        private int randomMove(ChessGameFacade game, SplittableRandom random) {
+            MoveList legal = game.getLegalMoveList();
+            return legal.get(random.nextInt(legal.size()));
+        }
+
+        private int engineMove(ChessGameFacade game) {
+            int color = Position.colorIndex(game.getCurrentPlayer());
+            // No time limit, only the depth
+            return engine.search(game.getBoardCopy(), color, Long.MAX_VALUE / 2_000_000L, engineDepth);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+    }
+
+    // Reads an output file and prints how many games it holds and how they ended
+    static void summarize(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.remaining() < 8 || data.getLong() != MAGIC) {
+                throw new IOException(file + " is not a self-play file");
+            }
+            LongAdder[] counts = new LongAdder[RESULT_NAMES.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+            long games = 0;
+            long moves = 0;
+            while (data.remaining() >= 3) {
+                int length = data.getShort() & 0xffff;
+                int result = data.get();
+                if (result < 0 || result >= counts.length || data.remaining() < 2 * length) {
+                    throw new IOException(file + " is cut off or damaged after " + games + " games");
+                }
+                data.position(data.position() + 2 * length);
+                counts[result].increment();
+                games++;
+                moves += length;
+            }
+            System.out.printf("%d games, %d moves in %s%n", games, moves, file);
+            printResults(counts, games, moves);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Perfect play for positions with few pieces left, looked up in EndgameTables instead of searched for.
+// Tables are files named after their signature ("KQK.tb", "KRKP.tb", ...) built by TablebaseGenerator.
+// A probe answers for the position as it is, including which side has which pieces: a table stored with
+// white as the stronger side also answers the same endgame with the colors swapped, by mirroring the board.
+// Lookups don't change anything, so one tablebase can be shared by all threads.
+class Tablebase {
+    static final int UNKNOWN = -1; // No table covers the position
+
+    // Tables by material key (see materialKey), and whether the key is the table's mirror image
+    private final EndgameTable[] tables = new EndgameTable[keyLimit()];
+    private final boolean[] mirrored = new boolean[keyLimit()];
+    private int maxPieces = 2;
+
+    // An empty tablebase; only two bare kings are known (always a draw)
+    public Tablebase() {
+    }
+
+    // Opens every table in the directory
+    public static Tablebase open(Path directory) throws IOException {
+        Tablebase tablebase = new Tablebase();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.tb")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                tablebase.add(EndgameTable.open(file, name.substring(0, name.length() - 3)));
+            }
+        }
+        return tablebase;
+    }
+
+    public void add(EndgameTable table) {
+        int[] codes = new int[table.getPieces() - 2];
+        int[] mirrorCodes = new int[codes.length];
+        for (int slot = 2; slot < table.getPieces(); slot++) {
+            codes[slot - 2] = code(table.color(slot), table.type(slot));
+            mirrorCodes[slot - 2] = code(table.color(slot) ^ 1, table.type(slot));
+        }
+        int mirrorKey = materialKey(mirrorCodes);
+        tables[mirrorKey] = table;
+        mirrored[mirrorKey] = true;
+        // A table that is its own mirror image (like KPKP) is looked up as it is
+        int key = materialKey(codes);
+        tables[key] = table;
+        mirrored[key] = false;
+        maxPieces = Math.max(maxPieces, table.getPieces());
+    }
+
+    // Whether a table for the endgame (in any color order) is loaded
+    public boolean has(String signature) {
+        String canonical = EndgameTable.canonical(signature);
+        for (EndgameTable table : tables) {
+            if (table != null && table.getSignature().equals(canonical)) return true;
+        }
+        return false;
+    }
+
+    // The most pieces (kings included) of any loaded table; positions with more are never found
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    // The value of the position with the given color to move, as stored in EndgameTable
+    // (use isWin, isLoss and pliesToMate to read it), or UNKNOWN if no loaded table covers it.
+    // Castling rights and en passant captures are not part of the tables, so positions with either are UNKNOWN.
+    public int probe(Board board, int color) {
+        Position position = board.getPosition();
+        long occupied = position.occupied();
+        int pieces = Long.bitCount(occupied);
+        if (pieces > maxPieces || position.getCastlingRights() != 0 || position.getEpSquare() >= 0 || Long.bitCount(position.pieces(Position.WHITE, Position.KING)) != 1
+                || Long.bitCount(position.pieces(Position.BLACK, Position.KING)) != 1) {
+            return UNKNOWN;
+        }
+        if (pieces == 2) return EndgameTable.DRAW;
+
+        // The key lists the other pieces by code, smallest first
+        int key = 0;
+        for (int code = 1; code <= 10; code++) {
+            long bits = position.pieces((code - 1) / 5, (code - 1) % 5);
+            for (int i = Long.bitCount(bits); i > 0; i--) {
+                key = key * 11 + code;
+            }
+        }
+        EndgameTable table = tables[key];
+        if (table == null) return UNKNOWN;
+
+        // Mirroring swaps the colors and turns the board upside down (row x becomes row 7 - x)
+        int flip = mirrored[key] ? 1 : 0;
+        int squareFlip = mirrored[key] ? 56 : 0;
+        int index = color ^ flip;
+        long taken = 0;
+        for (int slot = 0; slot < table.getPieces(); slot++) {
+            // Identical pieces take their squares in order, so any order of them is found
+            long bits = position.pieces(table.color(slot) ^ flip, table.type(slot)) & ~taken;
+            int square = Long.numberOfTrailingZeros(bits);
+            taken |= 1L << square;
+            index = index << 6 | (square ^ squareFlip);
+        }
+        return table.value(index);
+    }
+
+    // Whether the side to move mates, for a value returned by probe
+    static boolean isWin(int value) {
+        return value > 0 && value < EndgameTable.INVALID && (value & 1) == 0;
+    }
+
+    // Whether the side to move gets mated, for a value returned by probe
+    static boolean isLoss(int value) {
+        return value > 0 && value < EndgameTable.INVALID && (value & 1) == 1;
+    }
+
+    // Number of plies until mate with best play from both sides, for a won or lost value
+    static int pliesToMate(int value) {
+        return value - 1;
+    }
+
+    // Describes a value, e.g. "win, mate in 10 plies"
+    static String describe(int value) {
+        if (value == UNKNOWN) return "unknown";
+        if (value == EndgameTable.INVALID) return "invalid";
+        if (isWin(value)) return "win, mate in " + pliesToMate(value) + " plies";
+        if (isLoss(value)) return pliesToMate(value) == 0 ? "checkmated" : "loss, mated in " + pliesToMate(value) + " plies";
+        return "draw";
+    }
+
+    // Pieces other than kings are coded 1-10 (color * 5 + type + 1) and their sorted codes read as a
+    // base-11 number make the material key of the position
+    private static int code(int color, int type) {
+        return color * 5 + type + 1;
+    }
+
+    private static int materialKey(int[] codes) {
+        int[] sorted = codes.clone();
+        Arrays.sort(sorted);
+        int key = 0;
+        for (int code : sorted) {
+            key = key * 11 + code;
+        }
+        return key;
+    }
+
+    private static int keyLimit() {
+        int limit = 1;
+        for (int i = 2; i < EndgameTable.MAX_PIECES; i++) limit *= 11;
+        return limit;
+    }
+}
@@ -0,0 +1,363 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+// Builds endgame tables by retrograde analysis: starting from the checkmates, it works backwards one ply
+// at a time. A position is won in n plies if some move leads to a position lost in n - 1, and lost in n
+// if every move leads to a position won in fewer (the longest of them counts). Positions never decided
+// this way are draws.
+// The rules come from the engine itself: every position's moves are listed by MoveGenerator and tried on
+// a Board, so the tables follow exactly the rules the game plays by. Captures and promotions leave the
+// table and are looked up in the smaller tables, which are built (or loaded) first.
+// Every pass over a table is split over all threads; positions are claimed with atomic updates.
+// Usage: java TablebaseGenerator <directory> [--threads n] <signature> [more signatures...]
+//   e.g. java TablebaseGenerator tables KQK KRK KPK KQKR
+//   Tables already in the directory are loaded instead of built again.
+public class TablebaseGenerator {
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final int CHUNK = 1 << 14; // Positions per task
+    private static final int NEVER_LOSES = 255; // Marks a position with a move to a draw or a win, so it can't lose
+
+    private final Path directory;
+    private final ForkJoinPool pool;
+    private final Tablebase tablebase = new Tablebase(); // Finished tables, for captures and promotions
+
+    // The table being built, shared by the tasks
+    private EndgameTable table;
+    private byte[] values;
+    // Moves not yet known to lose, for positions that aren't decided yet; NEVER_LOSES if one of them
+    private byte[] moveCounts;
+    // Odd: the ply at which a capture or promotion wins; even: the fewest plies the position can last
+    // if it loses, because of the captures and promotions that lose; 0 if neither
+    private byte[] exits;
+
+    public TablebaseGenerator(Path directory, int threads) {
+        this.directory = directory;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java TablebaseGenerator <directory> [--threads n] <signature> [more signatures...]");
+            return;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--threads")) threads = Integer.parseInt(args[i + 1]);
+        }
+        Path directory = Paths.get(args[0]);
+        Files.createDirectories(directory);
+        TablebaseGenerator generator = new TablebaseGenerator(directory, threads);
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--threads")) {
+                    i++;
+                } else {
+                    generator.generate(args[i]);
+                }
+            }
+        } finally {
+            generator.pool.shutdown();
+        }
+    }
+
+    // The tables built or loaded so far
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    // Builds the table for the endgame and every smaller one it depends on, unless they are already done.
+    // Tables are written to the directory as they are finished.
+    public void generate(String signature) throws IOException {
+        String canonical = EndgameTable.canonical(signature);
+        if (canonical.length() == 2 || tablebase.has(canonical)) return; // Two bare kings need no table
+        Path file = directory.resolve(canonical + ".tb");
+        if (Files.exists(file)) {
+            tablebase.add(EndgameTable.open(file, canonical));
+            System.out.println("Loaded " + file);
+            return;
+        }
+
+        // Every capture removes a piece, every promotion turns a pawn into another piece
+        for (int i = 0; i < canonical.length(); i++) {
+            char piece = canonical.charAt(i);
+            if (piece == 'K') continue;
+            generate(canonical.substring(0, i) + canonical.substring(i + 1));
+            if (piece == 'P') {
+                for (int type = Position.KNIGHT; type <= Position.QUEEN; type++) {
+                    generate(canonical.substring(0, i) + EndgameTable.letter(type) + canonical.substring(i + 1));
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        EndgameTable built = build(canonical);
+        built.write(file);
+        tablebase.add(built);
+        System.out.printf("%s: %s in %.1f s%n", canonical, summary(built), (System.nanoTime() - start) / 1e9);
+    }
+
+    private EndgameTable build(String signature) {
+        int size = EndgameTable.size(signature.length());
+        values = new byte[size];
+        moveCounts = new byte[size];
+        exits = new byte[size];
+        table = new EndgameTable(signature, ByteBuffer.wrap(values));
+        try {
+            LongAdder decided = new LongAdder();
+            pool.invoke(new Pass(0, size, 0, decided));
+            int longestExit = 0;
+            for (byte exit : exits) {
+                longestExit = Math.max(longestExit, exit & 0xff);
+            }
+
+            // Round p decides the positions that are won or lost in exactly p plies
+            boolean progress = true;
+            for (int plies = 1; plies < EndgameTable.INVALID - 1 && (progress || plies <= longestExit); plies++) {
+                long before = decided.sum();
+                pool.invoke(new Pass(0, size, plies, decided));
+                progress = decided.sum() > before;
+            }
+            return table;
+        } finally {
+            moveCounts = null;
+            exits = null;
+        }
+    }
+
+    // One pass over a range of positions: the first pass (plies 0) classifies every position,
+    // the others decide the positions won or lost in the given number of plies
+    private class Pass extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int plies;
+        private final LongAdder decided;
+
+        Pass(int from, int to, int plies, LongAdder decided) {
+            this.from = from;
+            this.to = to;
+            this.plies = plies;
+            this.decided = decided;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Pass(from, middle, plies, decided), new Pass(middle, to, plies, decided));
+                return;
+            }
+            Worker worker = new Worker();
+            long count = 0;
+            for (int index = from; index < to; index++) {
+                count += plies == 0 ? worker.classify(index) : worker.advance(index, plies);
+            }
+            decided.add(count);
+        }
+    }
+
+    // Scratch state for one task: a board with the table's pieces and move buffers
+    private class Worker {
+        final int pieces = table.getPieces();
+        final int[] squares = new int[pieces];
+        final Piece[] slots = new Piece[pieces];
+        final Board board = new Board();
+        final MoveList moves = new MoveList();
+
+        Worker() {
+            for (int slot = 0; slot < pieces; slot++) {
+                slots[slot] = PieceFactory.createPiece(table.type(slot), table.color(slot) == Position.WHITE ? "white" : "black");
+            }
+        }
+
+        // First pass: marks invalid positions, checkmates and stalemates, counts the moves that stay in
+        // the table and looks up the ones that leave it. Returns 1 if the position is decided (a checkmate).
+        int classify(int index) {
+            int color = EndgameTable.decode(index, squares, pieces);
+            long occupied = 0;
+            for (int slot = 0; slot < pieces; slot++) {
+                int square = squares[slot];
+                int row = square >>> 3;
+                if ((occupied & (1L << square)) != 0 || table.type(slot) == Position.PAWN && (row == 0 || row == 7)) {
+                    values[index] = (byte) EndgameTable.INVALID;
+                    return 0;
+                }
+                occupied |= 1L << square;
+            }
+            setUp();
+            if (board.isKingInCheck(color ^ 1)) {
+                values[index] = (byte) EndgameTable.INVALID;
+                return 0;
+            }
+
+            MoveGenerator.generateLegal(board, color, moves);
+            if (moves.size() == 0) {
+                if (board.isKingInCheck(color)) {
+                    values[index] = 1;
+                    return 1;
+                }
+                return 0; // Stalemate, stays a draw
+            }
+            long occupiedByEnemy = board.getPosition().occupancy(color ^ 1);
+            int quiet = 0;
+            int fastestWin = Integer.MAX_VALUE;
+            int slowestLoss = 0;
+            boolean canDraw = false;
+            for (int i = 0; i < moves.size(); i++) {
+                int move = moves.get(i);
+                if ((occupiedByEnemy & (1L << Move.to(move))) == 0 && Move.promotion(move) == Position.PAWN) {
+                    quiet++;
+                    continue;
+                }
+                board.makeMove(move);
+                int value = tablebase.probe(board, color ^ 1);
+                board.unmakeMove();
+                if (value == Tablebase.UNKNOWN) {
+                    throw new IllegalStateException("No table for the position after " + Move.toString(move)
+                            + " in " + table.getSignature());
+                }
+                if (Tablebase.isLoss(value)) {
+                    fastestWin = Math.min(fastestWin, Tablebase.pliesToMate(value) + 1);
+                } else if (Tablebase.isWin(value)) {
+                    slowestLoss = Math.max(slowestLoss, Tablebase.pliesToMate(value) + 1);
+                } else {
+                    canDraw = true;
+                }
+            }
+            if (fastestWin != Integer.MAX_VALUE) {
+                exits[index] = (byte) fastestWin;
+                moveCounts[index] = (byte) NEVER_LOSES;
+            } else {
+                exits[index] = (byte) slowestLoss;
+                moveCounts[index] = (byte) (canDraw ? NEVER_LOSES : quiet);
+            }
+            return 0;
+        }
+
+        // Later passes: positions decided in the last round pass their result back to the positions
+        // that lead to them, and positions whose captures or promotions decide them this round are marked.
+        // Returns the number of positions decided.
+        int advance(int index, int plies) {
+            int value = values[index] & 0xff;
+            int count = 0;
+            if (value == plies) {
+                // Decided in plies - 1: find the positions one move earlier
+                count += retract(index, Tablebase.isLoss(value), plies);
+            } else if (value == EndgameTable.DRAW && (exits[index] & 0xff) == plies
+                    && ((plies & 1) == 1 || moveCounts[index] == 0)) {
+                if (decide(index, plies)) count++;
+            }
+            return count;
+        }
+
+        // Goes through the positions the side that just moved came from (moves that are not captures
+        // or promotions, undone). If the position is lost for the side to move, they are all won;
+        // if it is won, it is one less way out for them.
+        private int retract(int index, boolean lost, int plies) {
+            int color = EndgameTable.decode(index, squares, pieces);
+            int mover = color ^ 1;
+            long occupied = 0;
+            for (int slot = 0; slot < pieces; slot++) {
+                occupied |= 1L << squares[slot];
+            }
+            int count = 0;
+            for (int slot = 0; slot < pieces; slot++) {
+                if (table.color(slot) != mover) continue;
+                int square = squares[slot];
+                long origins = origins(table.type(slot), mover, square, occupied);
+                while (origins != 0) {
+                    int origin = Long.numberOfTrailingZeros(origins);
+                    origins &= origins - 1;
+                    squares[slot] = origin;
+                    int previous = table.index(mover, squares);
+                    squares[slot] = square;
+                    if ((byte) BYTES.getVolatile(values, previous) != EndgameTable.DRAW) continue;
+                    if (lost) {
+                        if (decide(previous, plies)) count++;
+                    } else if (moveCounts[previous] != (byte) NEVER_LOSES
+                            && decrement(previous) == 1
+                            && (exits[previous] & 0xff) <= plies) {
+                        // That was its last move; its captures and promotions may still hold out longer
+                        if (decide(previous, plies)) count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        // Squares a piece of the given type could have come from to reach the square with a quiet move
+        private long origins(int type, int color, int square, long occupied) {
+            long empty = ~occupied;
+            switch (type) {
+                case Position.KING: return Bitboards.KING_ATTACKS[square] & empty;
+                case Position.KNIGHT: return Bitboards.KNIGHT_ATTACKS[square] & empty;
+                case Position.BISHOP: return Bitboards.bishopAttacks(square, occupied) & empty;
+                case Position.ROOK: return Bitboards.rookAttacks(square, occupied) & empty;
+                case Position.QUEEN:
+                    return (Bitboards.bishopAttacks(square, occupied) | Bitboards.rookAttacks(square, occupied)) & empty;
+                default: {
+                    // Pawns only move forward: one step back, or two from the row a double step lands on
+                    int back = color == Position.WHITE ? 8 : -8;
+                    int row = square >>> 3;
+                    int startRow = color == Position.WHITE ? 6 : 1;
+                    int origin = square + back;
+                    if (origin >>> 3 == 0 || origin >>> 3 == 7 || (empty & (1L << origin)) == 0) return 0;
+                    long result = 1L << origin;
+                    if (row + 2 * (back >> 3) == startRow && (empty & (1L << (origin + back))) != 0) {
+                        result |= 1L << (origin + back);
+                    }
+                    return result;
+                }
+            }
+        }
+
+        // Takes one move off the position's count and returns the count before.
+        // A compareAndSet loop rather than getAndAdd, whose result for byte arrays comes back without
+        // being narrowed to a byte from JIT-compiled code on JDK 17.
+        private int decrement(int index) {
+            while (true) {
+                byte count = (byte) BYTES.getVolatile(moveCounts, index);
+                if (BYTES.compareAndSet(moveCounts, index, count, (byte) (count - 1))) return count;
+            }
+        }
+
+        // Marks the undecided position as decided in the given number of plies
+        private boolean decide(int index, int plies) {
+            return BYTES.compareAndSet(values, index, (byte) EndgameTable.DRAW, (byte) (plies + 1));
+        }
+
+        private void setUp() {
+            board.clear();
+            for (int slot = 0; slot < pieces; slot++) {
+                slots[slot].setMoved(true); // No castling, and pawns off their start row can't double step anyway
+                board.setPiece(squares[slot] >>> 3, squares[slot] & 7, slots[slot]);
+            }
+        }
+    }
+
+    private static String summary(EndgameTable table) {
+        long wins = 0;
+        long losses = 0;
+        long draws = 0;
+        int longest = 0;
+        for (int i = 0; i < table.size(); i++) {
+            int value = table.value(i);
+            if (value == EndgameTable.INVALID) continue;
+            if (Tablebase.isWin(value)) wins++;
+            else if (Tablebase.isLoss(value)) losses++;
+            else draws++;
+            if (value != EndgameTable.DRAW) longest = Math.max(longest, Tablebase.pliesToMate(value));
+        }
+        return String.format("%d wins, %d losses, %d draws for the side to move, longest mate %d plies",
+                wins, losses, draws, longest);
+    }
+}
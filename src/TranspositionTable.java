@@ -0,0 +1,116 @@
+// A fixed-size hash table of analysis results, keyed by Zobrist hash.
+// Each slot is two longs: the packed data and the key XOR the data. A reader only accepts an entry
+// when both halves agree, so several threads can read and write without locks: a torn or
+// half-written entry simply looks like a miss.
+class TranspositionTable {
+    // How an entry's score relates to the real value of the position
+    static final int EXACT = 1;
+    static final int LOWER_BOUND = 2;
+    static final int UPPER_BOUND = 3;
+
+    // Decides whether a new result may overwrite the one already in its slot
+    enum ReplacementPolicy {
+        ALWAYS, // The newest result always wins.
+        DEPTH_PREFERRED, // Keep the deeper result.
+        DEPTH_AND_AGE // Keep the deeper result, unless it is left over from an earlier search.
+    }
+
+    // Layout of the packed data
+    private static final int MOVE_BITS = 20;
+    private static final int SCORE_SHIFT = 20;
+    private static final int DEPTH_SHIFT = 36;
+    private static final int BOUND_SHIFT = 44;
+    private static final int AGE_SHIFT = 46;
+
+    private final long[] keys; // Key XOR data for each slot.
+    private final long[] data; // Packed move, score, depth, bound and age for each slot.
+    private final int mask;
+    private final ReplacementPolicy policy;
+    private volatile int age; // Bumped by newSearch() so DEPTH_AND_AGE can tell old entries apart.
+
+    // Creates a table with room for the given number of entries (rounded down to a power of two).
+    TranspositionTable(int entries, ReplacementPolicy policy) {
+        int size = Integer.highestOneBit(Math.max(entries, 2));
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+        this.policy = policy;
+    }
+
+    // Looks up a position. Returns the packed entry, or 0 if the position isn't stored.
+    long probe(long hash) {
+        int slot = (int) hash & mask;
+        long entry = data[slot];
+        if (entry != 0 && (keys[slot] ^ entry) == hash) {
+            return entry;
+        }
+        return 0L;
+    }
+
+    // Stores a result for a position, if the replacement policy allows it.
+    void store(long hash, int move, int score, int depth, int bound) {
+        int slot = (int) hash & mask;
+        long old = data[slot];
+        if (old != 0 && (keys[slot] ^ old) != hash) {
+            boolean replace;
+            switch (policy) {
+                case DEPTH_PREFERRED:
+                    replace = depth >= depth(old);
+                    break;
+                case DEPTH_AND_AGE:
+                    replace = depth >= depth(old) || age(old) != (age & 0xFF);
+                    break;
+                default:
+                    replace = true;
+            }
+            if (!replace) return;
+        }
+        long entry = (move & ((1L << MOVE_BITS) - 1))
+                | ((long) (score & 0xFFFF) << SCORE_SHIFT)
+                | ((long) (depth & 0xFF) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) (age & 0xFF) << AGE_SHIFT);
+        data[slot] = entry;
+        keys[slot] = hash ^ entry;
+    }
+
+    // Marks the start of a new search, so older entries can be replaced first.
+    void newSearch() {
+        age++;
+    }
+
+    // Removes every entry; the table then behaves exactly like a new one.
+    void clear() {
+        for (int i = 0; i <= mask; i++) {
+            data[i] = 0L;
+            keys[i] = 0L;
+        }
+        age = 0;
+    }
+
+    // Number of slots in the table.
+    int capacity() {
+        return mask + 1;
+    }
+
+    // Decoding a packed entry returned by probe()
+    static int move(long entry) {
+        return (int) (entry & ((1L << MOVE_BITS) - 1));
+    }
+
+    static int score(long entry) {
+        return (short) (entry >>> SCORE_SHIFT);
+    }
+
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 3;
+    }
+
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & 0xFF;
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.SplittableRandom;
+
+// Random keys for Zobrist hashing. A position's hash is the XOR of the key of every piece on its square,
+// of its castling rights and of its en passant column, so each change updates it with a single XOR.
+// The keys come from a fixed seed, so a position has the same hash in every run (needed for files keyed by hash).
+class Zobrist {
+    static final long[][] PIECE_SQUARE = new long[12][64]; // Indexed by color * 6 + type, then square.
+    static final long BLACK_TO_MOVE; // Mixed in when black is the side to move.
+    static final long[] CASTLING = new long[16]; // Indexed by the castling rights (see Position); none is 0.
+    static final long[] EN_PASSANT = new long[8]; // Indexed by the column of the en passant square.
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5DEECE66DL);
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                PIECE_SQUARE[piece][square] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+        // Drawn after the older keys, so those (and hashes of positions without castling rights) stay the same
+        long[] rights = new long[4];
+        for (int i = 0; i < 4; i++) rights[i] = random.nextLong();
+        for (int i = 1; i < 16; i++) {
+            CASTLING[i] = CASTLING[i & (i - 1)] ^ rights[Integer.numberOfTrailingZeros(i)];
+        }
+        for (int i = 0; i < 8; i++) EN_PASSANT[i] = random.nextLong();
+    }
+
+    // Key of a piece of the given color and type on a square.
+    static long pieceKey(int color, int type, int square) {
+        return PIECE_SQUARE[color * 6 + type][square];
+    }
+
+    // Adds the side to move to a position hash.
+    static long withSideToMove(long hash, int color) {
+        return color == Position.BLACK ? hash ^ BLACK_TO_MOVE : hash;
+    }
+}